@@ -18,8 +18,10 @@ import com.google.android.apps.common.testing.accessibility.framework.Accessibil
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
 import com.google.common.annotations.Beta;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
@@ -189,6 +191,22 @@ public abstract class AccessibilityHierarchyCheck extends AccessibilityCheck {
     return null;
   }
 
+  /**
+   * Indicates whether this check evaluates each element on its own, so that it may be re-run on
+   * only some of the elements of a hierarchy. A check which returns {@code true} must honor {@link
+   * Parameters#getElementsToEvaluate()}, typically by calling {@link
+   * #getElementsToEvaluate(ViewHierarchyElement, AccessibilityHierarchy, Parameters)}, and every
+   * result it reports must pertain to one evaluated element. The results for an element may depend
+   * only upon the element, its ancestors and descendants, the elements which label it, the elements
+   * and windows which overlap it, the pixels of the screen capture within its bounds, the device
+   * state and the parameters.
+   *
+   * @see IncrementalHierarchyChecker
+   */
+  public boolean evaluatesElementsIndependently() {
+    return false;
+  }
+
   /**
    * Determines the {@link List} of {@link ViewHierarchyElement}s that should be evaluated based on
    * arguments provided to {@link
@@ -208,6 +226,36 @@ public abstract class AccessibilityHierarchyCheck extends AccessibilityCheck {
         : hierarchy.getActiveWindow().getAllViews();
   }
 
+  /**
+   * Determines the {@link List} of {@link ViewHierarchyElement}s that should be evaluated, as
+   * {@link #getElementsToEvaluate(ViewHierarchyElement, AccessibilityHierarchy)} does, but leaving
+   * out any elements excluded by {@link Parameters#getElementsToEvaluate()}.
+   *
+   * @param fromRoot the element from which evaluation should occur, or {@code null} if no such
+   *     element was provided
+   * @param hierarchy the non-{@code null} {@link AccessibilityHierarchy} under evaluation
+   * @param parameters optional input data or preferences
+   * @return a {@link List} of {@link ViewHierarchyElement}s that should be evaluated, in
+   *     depth-first ordering
+   */
+  protected static List<? extends ViewHierarchyElement> getElementsToEvaluate(
+      @Nullable ViewHierarchyElement fromRoot,
+      AccessibilityHierarchy hierarchy,
+      @Nullable Parameters parameters) {
+    List<? extends ViewHierarchyElement> elements = getElementsToEvaluate(fromRoot, hierarchy);
+    @Nullable Set<Long> ids = (parameters == null) ? null : parameters.getElementsToEvaluate();
+    if (ids == null) {
+      return elements;
+    }
+    List<ViewHierarchyElement> filteredElements = new ArrayList<>();
+    for (ViewHierarchyElement element : elements) {
+      if (ids.contains(element.getCondensedUniqueId())) {
+        filteredElements.add(element);
+      }
+    }
+    return filteredElements;
+  }
+
   /** Indicates whether the locale recorded in the {@link DeviceState} was English. */
   protected static boolean isEnglish(AccessibilityHierarchy hierarchy) {
     return hierarchy
@@ -17,9 +17,13 @@
 package com.google.android.apps.common.testing.accessibility.framework;
 
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.WindowHierarchyElement;
 import com.google.common.collect.Lists;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -226,19 +230,7 @@ public class ClusteringUtils {
         for (int i = 0; i < childCount; i++) {
           // Comparing object instances because ViewHierarchyElement.equals() can be expensive.
           if (parent.getChildView(i) == vhe) {
-            CharSequence shortClassName = getShortClassName(vhe);
-            if (shortClassName != null) {
-              parentResourceId.append('/').append(shortClassName);
-              if (includeIndices) {
-                parentResourceId.append('[').append(i + 1).append(']');
-              }
-            } else if (includeIndices) {
-              parentResourceId.append(":nth-child(").append(i + 1).append(')');
-            } else {
-              parentResourceId.append(":child");
-
-            }
-            return parentResourceId;
+            return appendChildResourceId(parentResourceId, vhe, i, includeIndices);
           }
         }
       }
@@ -246,6 +238,71 @@ public class ClusteringUtils {
     return null;
   }
 
+  /**
+   * Gets the pseudo resource IDs of all views in a window, indexed by view ID. The result is the
+   * same as calling {@link #getPseudoResourceId} for each view, but the ID of each view is extended
+   * from that of its parent rather than rebuilt from its nearest ancestor with a resource name, so
+   * the views of the window are visited only once.
+   */
+  @SuppressWarnings("ReferenceEquality")
+  public static List<@Nullable String> getPseudoResourceIds(
+      WindowHierarchyElement window, boolean includeIndices) {
+    List<? extends ViewHierarchyElement> views = window.getAllViews();
+    @Nullable String[] resourceIds = new String[views.size()];
+    boolean[] visited = new boolean[views.size()];
+    Deque<ViewHierarchyElement> stack = new ArrayDeque<>();
+    for (ViewHierarchyElement view : views) {
+      resourceIds[view.getId()] = view.getResourceName();
+      if (view.getParentView() == null) {
+        visited[view.getId()] = true;
+        stack.push(view);
+      }
+    }
+    while (!stack.isEmpty()) {
+      ViewHierarchyElement parent = stack.pop();
+      @Nullable String parentResourceId = resourceIds[parent.getId()];
+      int childCount = parent.getChildViewCount();
+      for (int i = 0; i < childCount; i++) {
+        ViewHierarchyElement child = parent.getChildView(i);
+        if (visited[child.getId()] || (child.getParentView() != parent)) {
+          continue;
+        }
+        visited[child.getId()] = true;
+        if ((child.getResourceName() == null) && (parentResourceId != null)) {
+          resourceIds[child.getId()] =
+              appendChildResourceId(new StringBuilder(parentResourceId), child, i, includeIndices)
+                  .toString();
+        }
+        stack.push(child);
+      }
+    }
+    return Arrays.asList(resourceIds);
+  }
+
+  /**
+   * Appends the part of a pseudo resource ID which identifies a child within its parent.
+   *
+   * @param index the index of the child within its parent
+   */
+  private static StringBuilder appendChildResourceId(
+      StringBuilder parentResourceId,
+      ViewHierarchyElement child,
+      int index,
+      boolean includeIndices) {
+    CharSequence shortClassName = getShortClassName(child);
+    if (shortClassName != null) {
+      parentResourceId.append('/').append(shortClassName);
+      if (includeIndices) {
+        parentResourceId.append('[').append(index + 1).append(']');
+      }
+    } else if (includeIndices) {
+      parentResourceId.append(":nth-child(").append(index + 1).append(')');
+    } else {
+      parentResourceId.append(":child");
+    }
+    return parentResourceId;
+  }
+
   /**
    * Returns the simple name of the class to which the given view belongs, or {@code null} if one
    * cannot be determined.
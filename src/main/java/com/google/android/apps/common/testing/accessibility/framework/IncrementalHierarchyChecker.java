@@ -0,0 +1,448 @@
+package com.google.android.apps.common.testing.accessibility.framework;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchyDiff;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewBoundsIndex;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewTreeIndex;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.WindowHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastSwatchCache;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ScreenCaptureTileHashes;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Evaluates accessibility checks against successive snapshots of a screen, re-running checks only
+ * where a snapshot differs from the one before it. This suits long UI tests which check the screen
+ * after every step, when most of the screen is unchanged from one step to the next.
+ *
+ * <p>Each snapshot is compared with the previous one using an {@link AccessibilityHierarchyDiff}.
+ * Checks which {@link AccessibilityHierarchyCheck#evaluatesElementsIndependently() evaluate
+ * elements independently} are re-run only for the views of the active window which are affected by
+ * the differences: views which were added or changed, together with their ancestors and
+ * descendants; views whose children were added, removed or reordered; views which overlap an added,
+ * removed or changed view; views whose label is affected; and views whose region of the screen
+ * capture has changed. The results of such a check for every other view are carried forward from
+ * the previous snapshot. Other checks, such as those comparing views with one another, are re-run
+ * in full unless nothing at all has changed.
+ *
+ * <p>The results are the same as those of running every check on the whole active window of each
+ * snapshot, provided that the parameters other than the screen capture do not change between
+ * snapshots. Every view is treated as affected if the device state, the windows or the active
+ * window change, or if a screen capture is present for only one of two successive snapshots or
+ * the two screen captures differ in size.
+ *
+ * <p>Screen captures are compared by the tile hashes of their {@link
+ * Parameters#getContrastSwatchCache() contrast swatch caches}, which are shared with the contrast
+ * checks. Tiles are hashed only when the previous snapshot had a screen capture of the same size,
+ * and screen captures must not be modified once they have been evaluated.
+ *
+ * <p>Instances are safe for use by multiple threads, though snapshots are evaluated one at a time.
+ */
+public class IncrementalHierarchyChecker {
+
+  private final ImmutableSet<AccessibilityHierarchyCheck> checks;
+
+  private @Nullable AccessibilityHierarchy previousHierarchy;
+  private @Nullable ContrastSwatchCache previousSwatchCache;
+  private Map<AccessibilityHierarchyCheck, List<AccessibilityHierarchyCheckResult>>
+      previousResults = new HashMap<>();
+
+  /** @param checks the checks to run against each snapshot */
+  public IncrementalHierarchyChecker(ImmutableSet<AccessibilityHierarchyCheck> checks) {
+    this.checks = checks;
+  }
+
+  /**
+   * Runs the checks against a snapshot of the screen, re-using the results for the previous
+   * snapshot where possible. The first snapshot is evaluated in full.
+   *
+   * @param hierarchy the snapshot to check
+   * @param parameters Optional input data or preferences, including the screen capture of the
+   *     snapshot.
+   * @return the results of all checks, as if each had been run on the whole active window of
+   *     {@code hierarchy}
+   */
+  public synchronized ImmutableList<AccessibilityHierarchyCheckResult> runChecks(
+      AccessibilityHierarchy hierarchy, @Nullable Parameters parameters) {
+    @Nullable ContrastSwatchCache swatchCache =
+        (parameters == null) ? null : parameters.getContrastSwatchCache();
+
+    @Nullable AccessibilityHierarchy previous = previousHierarchy;
+    @Nullable AccessibilityHierarchyDiff diff = null;
+    @Nullable BitSet affectedIds = null;
+    boolean unchanged = false;
+    if (previous != null) {
+      diff = AccessibilityHierarchyDiff.compute(previous, hierarchy);
+      @Nullable ContrastSwatchCache previousCache = previousSwatchCache;
+      ScreenCaptureTileHashes.@Nullable ChangedTiles changedTiles = null;
+      boolean screenCapturesComparable = (swatchCache == null) && (previousCache == null);
+      if ((swatchCache != null) && (previousCache != null)) {
+        changedTiles = compareScreenCaptures(swatchCache, previousCache);
+        screenCapturesComparable = (changedTiles != null);
+      }
+      if (screenCapturesComparable) {
+        affectedIds = findAffectedViews(diff, changedTiles);
+        unchanged =
+            (affectedIds != null)
+                && affectedIds.isEmpty()
+                && diff.isEmpty()
+                && ((changedTiles == null) || (changedTiles.getChangedTileCount() == 0));
+      }
+    }
+
+    ImmutableList.Builder<AccessibilityHierarchyCheckResult> results = ImmutableList.builder();
+    Map<AccessibilityHierarchyCheck, List<AccessibilityHierarchyCheckResult>> checkResults =
+        new HashMap<>();
+    for (AccessibilityHierarchyCheck check : checks) {
+      @Nullable List<AccessibilityHierarchyCheckResult> previousCheckResults =
+          previousResults.get(check);
+      @Nullable List<AccessibilityHierarchyCheckResult> resultsForCheck = null;
+      if ((diff != null) && (affectedIds != null) && (previousCheckResults != null)) {
+        if (unchanged) {
+          resultsForCheck = carryForwardAll(diff, previousCheckResults);
+        } else if (check.evaluatesElementsIndependently()) {
+          resultsForCheck =
+              runCheckOnAffectedViews(check, diff, affectedIds, previousCheckResults, parameters);
+        }
+      }
+      if (resultsForCheck == null) {
+        resultsForCheck = check.runCheckOnHierarchy(hierarchy, null, parameters);
+      }
+      checkResults.put(check, resultsForCheck);
+      results.addAll(resultsForCheck);
+    }
+
+    previousHierarchy = hierarchy;
+    previousSwatchCache = swatchCache;
+    previousResults = checkResults;
+    return results.build();
+  }
+
+  /** Forgets the previous snapshot, so that the next snapshot is evaluated in full. */
+  public synchronized void reset() {
+    previousHierarchy = null;
+    previousSwatchCache = null;
+    previousResults = new HashMap<>();
+  }
+
+  /**
+   * Runs a check on the affected views of the active window, and carries forward its previous
+   * results for the other views.
+   *
+   * @return the results in the order in which the check would report them for the whole window,
+   *     or {@code null} if the previous results cannot be carried forward
+   */
+  private static @Nullable List<AccessibilityHierarchyCheckResult> runCheckOnAffectedViews(
+      AccessibilityHierarchyCheck check,
+      AccessibilityHierarchyDiff diff,
+      BitSet affectedIds,
+      List<AccessibilityHierarchyCheckResult> previousCheckResults,
+      @Nullable Parameters parameters) {
+    WindowHierarchyElement window = diff.getCurrent().getActiveWindow();
+
+    // Results which cannot be copied, such as those holding images, are recomputed.
+    BitSet idsToEvaluate = (BitSet) affectedIds.clone();
+    for (AccessibilityHierarchyCheckResult result : previousCheckResults) {
+      if (result.getElement() == null) {
+        return null;
+      }
+      @Nullable ViewHierarchyElement element = getCurrentElement(diff, result, window);
+      if ((element != null) && (result.getClass() != AccessibilityHierarchyCheckResult.class)) {
+        idsToEvaluate.set(element.getId());
+      }
+    }
+    List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
+    for (AccessibilityHierarchyCheckResult result : previousCheckResults) {
+      @Nullable ViewHierarchyElement element = getCurrentElement(diff, result, window);
+      if ((element != null) && !idsToEvaluate.get(element.getId())) {
+        results.add(copyForElement(result, element));
+      }
+    }
+
+    Parameters restrictedParameters;
+    try {
+      restrictedParameters = (parameters == null) ? new Parameters() : parameters.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException(e);
+    }
+    Set<Long> condensedUniqueIds = new HashSet<>();
+    for (int id = idsToEvaluate.nextSetBit(0); id >= 0; id = idsToEvaluate.nextSetBit(id + 1)) {
+      condensedUniqueIds.add(window.getViewById(id).getCondensedUniqueId());
+    }
+    restrictedParameters.putElementsToEvaluate(condensedUniqueIds);
+
+    results.addAll(check.runCheckOnHierarchy(diff.getCurrent(), null, restrictedParameters));
+    // A check evaluates the views of a window in order of their ids. The sort is stable, so the
+    // results for each view stay in the order in which they were reported.
+    Collections.sort(
+        results, (first, second) -> Integer.compare(getElementId(first), getElementId(second)));
+    return results;
+  }
+
+  /**
+   * Carries forward all previous results of a check to an unchanged snapshot.
+   *
+   * @return the results, or {@code null} if the previous results cannot be carried forward
+   */
+  private static @Nullable List<AccessibilityHierarchyCheckResult> carryForwardAll(
+      AccessibilityHierarchyDiff diff, List<AccessibilityHierarchyCheckResult> previousResults) {
+    List<AccessibilityHierarchyCheckResult> results = new ArrayList<>(previousResults.size());
+    for (AccessibilityHierarchyCheckResult result : previousResults) {
+      @Nullable ViewHierarchyElement previousElement = result.getElement();
+      if (previousElement == null) {
+        results.add(result);
+        continue;
+      }
+      @Nullable ViewHierarchyElement element = diff.getCurrentElement(previousElement);
+      if ((element == null) || (result.getClass() != AccessibilityHierarchyCheckResult.class)) {
+        return null;
+      }
+      results.add(copyForElement(result, element));
+    }
+    return results;
+  }
+
+  /**
+   * Returns the view of the current snapshot matched with the element of a previous result, or
+   * {@code null} if there is none within {@code window}.
+   */
+  @SuppressWarnings("ReferenceEquality")
+  private static @Nullable ViewHierarchyElement getCurrentElement(
+      AccessibilityHierarchyDiff diff,
+      AccessibilityHierarchyCheckResult result,
+      WindowHierarchyElement window) {
+    @Nullable ViewHierarchyElement previousElement = result.getElement();
+    if (previousElement == null) {
+      return null;
+    }
+    @Nullable ViewHierarchyElement element = diff.getCurrentElement(previousElement);
+    return ((element != null) && (element.getWindow() == window)) ? element : null;
+  }
+
+  private static AccessibilityHierarchyCheckResult copyForElement(
+      AccessibilityHierarchyCheckResult result, ViewHierarchyElement element) {
+    return new AccessibilityHierarchyCheckResult(
+        result.getSourceCheckClass().asSubclass(AccessibilityHierarchyCheck.class),
+        result.getType(),
+        element,
+        result.getResultId(),
+        result.getMetadata(),
+        result.getAnswers());
+  }
+
+  private static int getElementId(AccessibilityHierarchyCheckResult result) {
+    @Nullable ViewHierarchyElement element = result.getElement();
+    return (element == null) ? Integer.MAX_VALUE : element.getId();
+  }
+
+  /**
+   * Finds the tiles which differ between two screen captures, hashing their tiles only if they are
+   * the same size.
+   *
+   * @return the changed tiles, or {@code null} if the screen captures differ in size
+   */
+  private static ScreenCaptureTileHashes.@Nullable ChangedTiles compareScreenCaptures(
+      ContrastSwatchCache swatchCache, ContrastSwatchCache previousSwatchCache) {
+    Image image = swatchCache.getImage();
+    Image previousImage = previousSwatchCache.getImage();
+    if ((image.getWidth() != previousImage.getWidth())
+        || (image.getHeight() != previousImage.getHeight())) {
+      return null;
+    }
+    return swatchCache.getTileHashes().compareTo(previousSwatchCache.getTileHashes());
+  }
+
+  /**
+   * Finds the views of the active window whose results may differ from those for the previous
+   * snapshot.
+   *
+   * @param changedTiles the tiles which differ between the screen captures of the two snapshots,
+   *     or {@code null} if neither snapshot has a screen capture
+   * @return the ids of the affected views, or {@code null} if every view is affected
+   */
+  private static @Nullable BitSet findAffectedViews(
+      AccessibilityHierarchyDiff diff,
+      ScreenCaptureTileHashes.@Nullable ChangedTiles changedTiles) {
+    if (diff.isDeviceStateChanged() || !haveSameWindows(diff.getPrevious(), diff.getCurrent())) {
+      return null;
+    }
+
+    WindowHierarchyElement window = diff.getCurrent().getActiveWindow();
+    AffectedViews affected = new AffectedViews(window);
+    // Views overlapping a view which was added, removed or changed, in either its current or its
+    // previous bounds, may be obscured or revealed by it.
+    ViewBoundsIndex boundsIndex = window.getViewBoundsIndex();
+    for (ViewHierarchyElement view : diff.getAddedElements()) {
+      if (view.getWindow() == window) {
+        affected.addWithAncestorsAndDescendants(view.getId());
+        affected.addIntersecting(boundsIndex, view.getBoundsInScreen());
+      }
+    }
+    for (ViewHierarchyElement view : diff.getChangedElements()) {
+      if (view.getWindow() == window) {
+        affected.addWithAncestorsAndDescendants(view.getId());
+        affected.addIntersecting(boundsIndex, view.getBoundsInScreen());
+        @Nullable ViewHierarchyElement previousView = diff.getPreviousElement(view);
+        if (previousView != null) {
+          affected.addIntersecting(boundsIndex, previousView.getBoundsInScreen());
+        }
+      }
+    }
+    for (ViewHierarchyElement view : diff.getRemovedElements()) {
+      if (view.getWindow().getId() == window.getId()) {
+        affected.addIntersecting(boundsIndex, view.getBoundsInScreen());
+      }
+    }
+
+    List<? extends ViewHierarchyElement> views = window.getAllViews();
+    for (ViewHierarchyElement view : views) {
+      @Nullable ViewHierarchyElement previousView = diff.getPreviousElement(view);
+      if ((previousView != null) && !haveSameChildren(diff, view, previousView)) {
+        affected.addWithAncestorsAndDescendants(view.getId());
+      }
+    }
+    if (changedTiles != null) {
+      for (ViewHierarchyElement view : views) {
+        if (isAffectedByTiles(view, changedTiles)) {
+          affected.add(view.getId());
+        }
+      }
+    }
+    // Labels are checked last, once every view whose own properties are affected is known.
+    for (ViewHierarchyElement view : views) {
+      @Nullable ViewHierarchyElement previousView = diff.getPreviousElement(view);
+      if ((previousView != null) && !hasUnaffectedLabel(diff, affected, view, previousView)) {
+        affected.addWithAncestors(view.getId());
+      }
+    }
+    return affected.toIds();
+  }
+
+  private static boolean isAffectedByTiles(
+      ViewHierarchyElement view, ScreenCaptureTileHashes.ChangedTiles changedTiles) {
+    // Text contrast may be measured over the text characters, which can extend beyond the view.
+    Rect region = view.getBoundsInScreen();
+    for (Rect characterLocation : view.getTextCharacterLocations()) {
+      region = region.union(characterLocation);
+    }
+    return !changedTiles.isUnchanged(region);
+  }
+
+  @SuppressWarnings("ReferenceEquality")
+  private static boolean haveSameChildren(
+      AccessibilityHierarchyDiff diff,
+      ViewHierarchyElement view,
+      ViewHierarchyElement previousView) {
+    int childCount = view.getChildViewCount();
+    if (childCount != previousView.getChildViewCount()) {
+      return false;
+    }
+    for (int i = 0; i < childCount; i++) {
+      if (diff.getPreviousElement(view.getChildView(i)) != previousView.getChildView(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @SuppressWarnings("ReferenceEquality")
+  private static boolean hasUnaffectedLabel(
+      AccessibilityHierarchyDiff diff,
+      AffectedViews affected,
+      ViewHierarchyElement view,
+      ViewHierarchyElement previousView) {
+    @Nullable ViewHierarchyElement label = view.getLabeledBy();
+    @Nullable ViewHierarchyElement previousLabel = previousView.getLabeledBy();
+    if ((label == null) || (previousLabel == null)) {
+      return (label == null) && (previousLabel == null);
+    }
+    return (label.getWindow() == view.getWindow())
+        && (diff.getPreviousElement(label) == previousLabel)
+        && !affected.contains(label.getId());
+  }
+
+  private static boolean haveSameWindows(
+      AccessibilityHierarchy previous, AccessibilityHierarchy current) {
+    if ((previous.getAllWindows().size() != current.getAllWindows().size())
+        || (previous.getActiveWindow().getId() != current.getActiveWindow().getId())) {
+      return false;
+    }
+    for (WindowHierarchyElement window : current.getAllWindows()) {
+      WindowHierarchyElement previousWindow = previous.getWindowById(window.getId());
+      if (!Objects.equals(window.getType(), previousWindow.getType())
+          || !Objects.equals(window.getLayer(), previousWindow.getLayer())
+          || !window.getBoundsInScreen().equals(previousWindow.getBoundsInScreen())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The affected views of a window, held by position in depth-first pre-order so that a view and
+   * its descendants can be added as one range.
+   */
+  private static final class AffectedViews {
+
+    private final ViewTreeIndex treeIndex;
+    private final BitSet affected;
+
+    /** Views whose ancestors have all been added, so that walks up the tree can stop early. */
+    private final BitSet ancestorsAdded;
+
+    AffectedViews(WindowHierarchyElement window) {
+      treeIndex = window.getViewTreeIndex();
+      affected = new BitSet(treeIndex.size());
+      ancestorsAdded = new BitSet(treeIndex.size());
+    }
+
+    boolean contains(int id) {
+      return affected.get(treeIndex.getPreorderIndex(id));
+    }
+
+    void add(int id) {
+      affected.set(treeIndex.getPreorderIndex(id));
+    }
+
+    void addWithAncestors(int id) {
+      for (int ancestorId = id;
+          (ancestorId != ViewTreeIndex.NO_PARENT) && !ancestorsAdded.get(ancestorId);
+          ancestorId = treeIndex.getParentId(ancestorId)) {
+        ancestorsAdded.set(ancestorId);
+        add(ancestorId);
+      }
+    }
+
+    void addWithAncestorsAndDescendants(int id) {
+      addWithAncestors(id);
+      affected.set(treeIndex.getPreorderIndex(id), treeIndex.getSubtreeEnd(id));
+    }
+
+    void addIntersecting(ViewBoundsIndex boundsIndex, Rect region) {
+      for (ViewHierarchyElement view : boundsIndex.query(region)) {
+        add(view.getId());
+      }
+    }
+
+    BitSet toIds() {
+      BitSet ids = new BitSet(treeIndex.size());
+      for (int i = affected.nextSetBit(0); i >= 0; i = affected.nextSetBit(i + 1)) {
+        ids.set(treeIndex.getIdAtPreorderIndex(i));
+      }
+      return ids;
+    }
+  }
+}
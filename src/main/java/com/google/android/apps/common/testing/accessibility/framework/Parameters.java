@@ -1,11 +1,18 @@
 package com.google.android.apps.common.testing.accessibility.framework;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.android.apps.common.testing.accessibility.framework.ocr.OcrEngine;
 import com.google.android.apps.common.testing.accessibility.framework.ocr.OcrResult;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastSwatchCache;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastSwatchHistory;
 import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.TiledColorIndex;
+import com.google.common.collect.ImmutableSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** Supplemental input data or preferences for an {@link AccessibilityHierarchyCheck}. */
@@ -15,10 +22,17 @@ public class Parameters implements Cloneable {
   private @Nullable Double customTextContrastRatio;
   private @Nullable Double customImageContrastRatio;
   private @Nullable Integer customTouchTargetSize;
+  private @Nullable Integer imageContrastPixelBudget;
   private @Nullable Boolean enableEnhancedContrastEvaluation;
+  private @Nullable Boolean enableTiledContrastIndex;
   private @Nullable Boolean saveViewImage;
   private @Nullable OcrEngine ocrEngine;
   private @Nullable OcrResult ocrResult;
+  private @Nullable ContrastSwatchCache contrastSwatchCache;
+  private @Nullable Executor contrastEvaluationExecutor;
+  private @Nullable TiledColorIndex tiledColorIndex;
+  private @Nullable ImmutableSet<Long> elementsToEvaluate;
+  private final ContrastSwatchHistory contrastSwatchHistory = new ContrastSwatchHistory();
 
   public Parameters() {
     super();
@@ -47,8 +61,73 @@ public class Parameters implements Cloneable {
    *
    * @param image {@link Image} containing screen capture data
    */
-  public void putScreenCapture(Image image) {
+  public synchronized void putScreenCapture(Image image) {
     screenCapture = checkNotNull(image);
+    contrastSwatchCache = null;
+    tiledColorIndex = null;
+  }
+
+  /**
+   * Gets the cache of contrast analysis for regions of the screen capture. Contrast checks share
+   * this cache, so a region of the screen capture which is evaluated more than once, whether by
+   * different views or by repeated checks with these parameters, is analyzed only once.
+   *
+   * <p>A new cache is started whenever {@link #putScreenCapture(Image)} is called. It begins with
+   * the analysis of regions which are unchanged since the previous screen capture evaluated with
+   * these parameters or any of their clones, so checking the same screen repeatedly only analyzes
+   * the regions which have changed. See {@link ContrastSwatchHistory}.
+   *
+   * @return the {@link ContrastSwatchCache} for the current screen capture, or {@code null} if no
+   *     screen capture data was set.
+   */
+  public synchronized @Nullable ContrastSwatchCache getContrastSwatchCache() {
+    if ((contrastSwatchCache == null) && (screenCapture != null)) {
+      contrastSwatchCache = contrastSwatchHistory.newCache(screenCapture);
+    }
+    return contrastSwatchCache;
+  }
+
+  /**
+   * Gets the index of dominant colors over the screen capture, from which contrast checks compute
+   * the colors of each view when {@link #setEnableTiledContrastIndex(boolean)} is enabled. The index
+   * is built on first use.
+   *
+   * @return the {@link TiledColorIndex} for the current screen capture, or {@code null} if no
+   *     screen capture data was set or the tiled contrast index is not enabled. A new index is built
+   *     whenever {@link #putScreenCapture(Image)} is called.
+   */
+  public synchronized @Nullable TiledColorIndex getTiledColorIndex() {
+    if ((tiledColorIndex == null)
+        && (screenCapture != null)
+        && Boolean.TRUE.equals(enableTiledContrastIndex)) {
+      tiledColorIndex = new TiledColorIndex(screenCapture);
+    }
+    return tiledColorIndex;
+  }
+
+  /**
+   * Sets an {@link Executor} on which {@link
+   * com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck} and
+   * {@link com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck}
+   * may run their screen capture analysis for several views concurrently, such as a {@code
+   * ForkJoinPool}. Results are reported in the same order as when evaluated sequentially.
+   *
+   * <p>By default, all views are evaluated on the thread running the check.
+   *
+   * @param executor the {@link Executor} on which to analyze views
+   */
+  public void putContrastEvaluationExecutor(Executor executor) {
+    contrastEvaluationExecutor = checkNotNull(executor);
+  }
+
+  /**
+   * Gets the {@link Executor} on which contrast checks analyze views.
+   *
+   * @return the {@link Executor}, or {@code null} if views should be analyzed sequentially.
+   * @see #putContrastEvaluationExecutor(Executor)
+   */
+  public @Nullable Executor getContrastEvaluationExecutor() {
+    return contrastEvaluationExecutor;
   }
 
   /**
@@ -162,6 +241,32 @@ public class Parameters implements Cloneable {
     customTouchTargetSize = touchTargetSize;
   }
 
+  /**
+   * Gets the maximum number of pixels to analyze per view during image contrast evaluation.
+   *
+   * @return The user-defined pixel budget, or {@code null} if every pixel should be analyzed.
+   * @see #putImageContrastPixelBudget(int)
+   */
+  public @Nullable Integer getImageContrastPixelBudget() {
+    return imageContrastPixelBudget;
+  }
+
+  /**
+   * Sets the maximum number of pixels to analyze per view for use by {@link
+   * com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck}.
+   * Larger views are sampled on a uniform grid, which bounds the cost of evaluating very large
+   * images at the risk of missing fine detail. Results from sampled views record the sampling
+   * stride in their metadata. See {@link
+   * com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastSwatch#ContrastSwatch(Image,
+   * boolean, int)} for the effect of sampling on accuracy.
+   *
+   * @param pixelBudget the maximum number of pixels to analyze per view, which must be positive
+   */
+  public void putImageContrastPixelBudget(int pixelBudget) {
+    checkArgument(pixelBudget > 0, "pixelBudget must be > 0");
+    imageContrastPixelBudget = pixelBudget;
+  }
+
   /**
    * Gets a user-defined boolean value for enabling enhanced contrast evaluation from {@code
    * parameters}.
@@ -188,6 +293,34 @@ public class Parameters implements Cloneable {
     this.enableEnhancedContrastEvaluation = enableEnhancedContrastEvaluation;
   }
 
+  /**
+   * Gets a user-defined boolean value for enabling the tiled contrast index.
+   *
+   * @return The boolean value that turns on/off the tiled contrast index, or {@code null} if a
+   *     user-defined value has not been set.
+   * @see #setEnableTiledContrastIndex(boolean)
+   */
+  public @Nullable Boolean getEnableTiledContrastIndex() {
+    return enableTiledContrastIndex;
+  }
+
+  /**
+   * Sets a user-defined boolean value for computing the colors of views from a {@link
+   * TiledColorIndex} of the screen capture in {@link
+   * com.google.android.apps.common.testing.accessibility.framework.checks.ImageContrastCheck} and
+   * {@link com.google.android.apps.common.testing.accessibility.framework.checks.TextContrastCheck}.
+   * The index is built once per screen capture, after which the colors of each view are found in
+   * time proportional to the number of tiles it covers rather than its number of pixels. Results
+   * may differ slightly from a full analysis for views with many colors, such as photographs. When
+   * enabled, this takes precedence over {@link #putImageContrastPixelBudget(int)}.
+   *
+   * @param enableTiledContrastIndex {@code true} to use the tiled contrast index, {@code false} to
+   *     analyze the pixels of each view.
+   */
+  public void setEnableTiledContrastIndex(boolean enableTiledContrastIndex) {
+    this.enableTiledContrastIndex = enableTiledContrastIndex;
+  }
+
   /**
    * Sets an {@link OcrEngine} that can recognize text in a screenshot. Alternatively, an {@link
    * OcrResult} can instead be set directly using {@link #putOcrResult(OcrResult)}. But an {@code
@@ -222,11 +355,43 @@ public class Parameters implements Cloneable {
     return ocrResult;
   }
 
+  /**
+   * Gets the elements to which evaluation is restricted.
+   *
+   * @return the condensed unique IDs of the elements to evaluate, or {@code null} if evaluation is
+   *     not restricted
+   * @see #putElementsToEvaluate(Set)
+   */
+  public @Nullable ImmutableSet<Long> getElementsToEvaluate() {
+    return elementsToEvaluate;
+  }
+
+  /**
+   * Restricts evaluation to a set of elements. Checks which {@link
+   * AccessibilityHierarchyCheck#evaluatesElementsIndependently() evaluate elements independently}
+   * skip every other element, as if it were outside the subtree being evaluated. Other checks
+   * ignore this restriction.
+   *
+   * <p>This is typically used to re-evaluate only the elements affected by a change to a screen.
+   *
+   * @param condensedUniqueIds the {@link
+   *     com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement#getCondensedUniqueId()
+   *     condensed unique IDs} of the elements to evaluate
+   * @see IncrementalHierarchyChecker
+   */
+  public void putElementsToEvaluate(Set<Long> condensedUniqueIds) {
+    elementsToEvaluate = ImmutableSet.copyOf(condensedUniqueIds);
+  }
+
   /**
    * Performs a "shallow copy" of this object.
    *
-   * <p>The fields screenCapture (Image) and ocrEngine (OcrEngine) are neither copied nor immutable,
-   * so the clone will not be completely independent of the original.
+   * <p>The fields screenCapture (Image), ocrEngine (OcrEngine) and contrastSwatchCache
+   * (ContrastSwatchCache) are neither copied nor immutable, so the clone will not be completely
+   * independent of the original. The tiledColorIndex (TiledColorIndex) and elementsToEvaluate
+   * (ImmutableSet) are immutable, and are shared with the clone. The contrastSwatchHistory
+   * (ContrastSwatchHistory) is deliberately shared, so that analysis is carried over between screen
+   * captures evaluated with different clones.
    */
   @Override
   public Parameters clone() throws CloneNotSupportedException {
@@ -10,12 +10,17 @@ import com.google.android.apps.common.testing.accessibility.framework.replacemen
 import com.google.android.apps.common.testing.accessibility.framework.replacements.TextUtils;
 import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.DerivedAttributes;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewTreeIndex;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.WindowHierarchyElement;
 import com.google.common.base.Ascii;
 import com.google.common.collect.ImmutableList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
@@ -48,8 +53,28 @@ public final class ViewHierarchyElementUtils {
           HORIZONTAL_SCROLL_VIEW_CLASS_NAME,
           ANDROIDX_SCROLLING_VIEW_CLASS_NAME);
 
+  private static final DerivedAttributes.Key<Boolean> SHOULD_FOCUS_VIEW =
+      new DerivedAttributes.Key<>("shouldFocusView");
+  private static final DerivedAttributes.Key<Boolean> HAS_FOCUSABLE_ANCESTOR =
+      new DerivedAttributes.Key<>("hasFocusableAncestor");
+  private static final DerivedAttributes.Key<@Nullable ViewHierarchyElement>
+      FOCUSABLE_FOR_ACCESSIBILITY_ANCESTOR =
+          new DerivedAttributes.Key<>("focusableForAccessibilityAncestor");
+  private static final DerivedAttributes.Key<Boolean> IS_POTENTIALLY_OBSCURED =
+      new DerivedAttributes.Key<>("isPotentiallyObscured");
+  private static final String SPEAKABLE_TEXT_KEY_NAME = "speakableText";
+  private static final String SUBTREE_SPEAKABLE_TEXT_KEY_NAME = "subtreeSpeakableText";
+
   private ViewHierarchyElementUtils() {}
 
+  /**
+   * Returns the memo of derived attributes of the hierarchy containing {@code view}, through which
+   * the attributes computed here are shared by all checks evaluating the hierarchy.
+   */
+  private static DerivedAttributes getDerivedAttributes(ViewHierarchyElement view) {
+    return view.getWindow().getAccessibilityHierarchy().getDerivedAttributes();
+  }
+
   /** @deprecated Use {@link #getSpeakableTextForElement(ViewHierarchyElement, Locale)} instead */
   @Deprecated
   public static SpannableString getSpeakableTextForElement(ViewHierarchyElement element) {
@@ -68,6 +93,15 @@ public final class ViewHierarchyElementUtils {
    */
   public static SpannableString getSpeakableTextForElement(
       ViewHierarchyElement element, Locale locale) {
+    return getDerivedAttributes(element)
+        .get(
+            new DerivedAttributes.Key<SpannableString>(SPEAKABLE_TEXT_KEY_NAME, locale),
+            element,
+            view -> computeSpeakableTextForElement(view, locale));
+  }
+
+  private static SpannableString computeSpeakableTextForElement(
+      ViewHierarchyElement element, Locale locale) {
     SpannableString speakableText = getSpeakableTextFromElementSubtree(element, locale);
     if (element.isImportantForAccessibility()) {
       // Determine if this element is labeled by another element
@@ -99,6 +133,41 @@ public final class ViewHierarchyElementUtils {
    */
   private static SpannableString getSpeakableTextFromElementSubtree(
       ViewHierarchyElement element, Locale locale) {
+    @Nullable SpannableString[] subtreeTexts =
+        getDerivedAttributes(element)
+            .getForWindow(
+                new DerivedAttributes.Key<@Nullable SpannableString[]>(
+                    SUBTREE_SPEAKABLE_TEXT_KEY_NAME, locale),
+                element.getWindow(),
+                window -> computeSpeakableTextFromSubtrees(window, locale));
+    return checkNotNull(subtreeTexts[element.getId()]);
+  }
+
+  /**
+   * Determines the speakable text of the subtree of every view in a window, in one pass which
+   * visits each view after its children, so that the text of each subtree is built only once.
+   *
+   * @return the text of the subtree of each view, indexed by view id
+   */
+  private static @Nullable SpannableString[] computeSpeakableTextFromSubtrees(
+      WindowHierarchyElement window, Locale locale) {
+    List<? extends ViewHierarchyElement> views = window.getAllViews();
+    ViewTreeIndex treeIndex = window.getViewTreeIndex();
+    @Nullable SpannableString[] subtreeTexts = new SpannableString[views.size()];
+    for (int i = treeIndex.size() - 1; i >= 0; i--) {
+      int id = treeIndex.getIdAtPreorderIndex(i);
+      subtreeTexts[id] =
+          computeSpeakableTextFromElementSubtree(views.get(id), locale, subtreeTexts);
+    }
+    return subtreeTexts;
+  }
+
+  /**
+   * Determines the speakable text of an element and its subtree, taking the text of the subtrees of
+   * its children from {@code subtreeTexts} where they have already been determined.
+   */
+  private static SpannableString computeSpeakableTextFromElementSubtree(
+      ViewHierarchyElement element, Locale locale, @Nullable SpannableString[] subtreeTexts) {
     if (element.checkInstanceOf(TOGGLE_BUTTON_CLASS_NAME)
         || element.checkInstanceOf(SWITCH_CLASS_NAME)) {
       return ruleSwitch(element, locale);
@@ -136,7 +205,12 @@ public final class ViewHierarchyElementUtils {
     for (int i = 0; i < element.getChildViewCount(); ++i) {
       ViewHierarchyElement child = element.getChildView(i);
       if (!isFocusableOrClickableForAccessibility(child)) {
-        SpannableString childDesc = getSpeakableTextFromElementSubtree(child, locale);
+        // A child is visited before its parent unless the hierarchy is inconsistent, such as when
+        // a view is listed as the child of more than one parent.
+        @Nullable SpannableString childDesc = subtreeTexts[child.getId()];
+        if (childDesc == null) {
+          childDesc = computeSpeakableTextFromElementSubtree(child, locale, subtreeTexts);
+        }
         if (!TextUtils.isEmpty(childDesc)) {
           returnStringBuilder.appendWithSeparator(childDesc);
         }
@@ -244,6 +318,11 @@ public final class ViewHierarchyElementUtils {
    *     view}, {@code false} otherwise.
    */
   public static boolean shouldFocusView(ViewHierarchyElement view) {
+    return getDerivedAttributes(view)
+        .get(SHOULD_FOCUS_VIEW, view, ViewHierarchyElementUtils::computeShouldFocusView);
+  }
+
+  private static boolean computeShouldFocusView(ViewHierarchyElement view) {
     if (!TRUE.equals(view.isVisibleToUser())) {
       // We don't focus views that are not visible
       return false;
@@ -283,11 +362,21 @@ public final class ViewHierarchyElementUtils {
    */
   public static @Nullable ViewHierarchyElement getFocusableForAccessibilityAncestor(
       ViewHierarchyElement view) {
-    ViewHierarchyElement currentView = view;
-    while ((currentView != null) && !isAccessibilityFocusable(currentView)) {
-      currentView = currentView.getParentView();
+    return getDerivedAttributes(view)
+        .get(
+            FOCUSABLE_FOR_ACCESSIBILITY_ANCESTOR,
+            view,
+            ViewHierarchyElementUtils::computeFocusableForAccessibilityAncestor);
+  }
+
+  private static @Nullable ViewHierarchyElement computeFocusableForAccessibilityAncestor(
+      ViewHierarchyElement view) {
+    if (isAccessibilityFocusable(view)) {
+      return view;
     }
-    return currentView;
+    // The parent's result is memoized too, so a walk up the tree is not repeated for each view.
+    @Nullable ViewHierarchyElement parentView = view.getParentView();
+    return (parentView == null) ? null : getFocusableForAccessibilityAncestor(parentView);
   }
 
   /**
@@ -302,6 +391,11 @@ public final class ViewHierarchyElementUtils {
    *     otherwise
    */
   private static boolean hasFocusableAncestor(ViewHierarchyElement view) {
+    return getDerivedAttributes(view)
+        .get(HAS_FOCUSABLE_ANCESTOR, view, ViewHierarchyElementUtils::computeHasFocusableAncestor);
+  }
+
+  private static boolean computeHasFocusableAncestor(ViewHierarchyElement view) {
     ViewHierarchyElement parent = getImportantForAccessibilityAncestor(view);
     if (parent == null) {
       return false;
@@ -538,20 +632,30 @@ public final class ViewHierarchyElementUtils {
     AccessibilityHierarchy hierarchy = element.getWindow().getAccessibilityHierarchy();
     ViewHierarchyElement rootView = hierarchy.getActiveWindow().getRootView();
 
+    // Each ancestor of the element, mapped to its child on the path to the element.
+    Map<Integer, ViewHierarchyElement> pathChildren = new HashMap<>();
     ViewHierarchyElement view = element;
     while (view != rootView) {
       ViewHierarchyElement parentView = checkNotNull(view.getParentView());
-      for (int i = 0; i < parentView.getChildViewCount(); i++) {
-        ViewHierarchyElement siblingView = parentView.getChildView(i);
-        if ((siblingView.getDrawingOrder() != null)
-            && (checkNotNull(siblingView.getDrawingOrder()) > checkNotNull(view.getDrawingOrder()))
-            && Rect.intersects(element.getBoundsInScreen(), siblingView.getBoundsInScreen())) {
-          return true;
-        }
-      }
+      pathChildren.put(parentView.getId(), view);
       view = parentView;
     }
 
+    // An overlay is a sibling of the element or of one of its ancestors which is drawn after it and
+    // intersects the element, so only the views which intersect the element need be considered.
+    for (ViewHierarchyElement candidate :
+        element.getWindow().getViewBoundsIndex().query(element.getBoundsInScreen())) {
+      Integer drawingOrder = candidate.getDrawingOrder();
+      ViewHierarchyElement parentView = candidate.getParentView();
+      if ((drawingOrder == null) || (parentView == null)) {
+        continue;
+      }
+      ViewHierarchyElement pathChild = pathChildren.get(parentView.getId());
+      if ((pathChild != null) && (drawingOrder > checkNotNull(pathChild.getDrawingOrder()))) {
+        return true;
+      }
+    }
+
     return false;
   }
 
@@ -564,8 +668,11 @@ public final class ViewHierarchyElementUtils {
    *     content, otherwise {@code false}
    */
   public static boolean isPotentiallyObscured(ViewHierarchyElement viewHierarchyElement) {
-    return isIntersectedByOverlayWindow(viewHierarchyElement)
-        || isIntersectedByOverlayView(viewHierarchyElement);
+    return getDerivedAttributes(viewHierarchyElement)
+        .get(
+            IS_POTENTIALLY_OBSCURED,
+            viewHierarchyElement,
+            view -> isIntersectedByOverlayWindow(view) || isIntersectedByOverlayView(view));
   }
 
   private static SpannableString dedupeJoin(@Nullable CharSequence... values) {
@@ -0,0 +1,72 @@
+package com.google.android.apps.common.testing.accessibility.framework.checks;
+
+import com.google.android.apps.common.testing.accessibility.framework.Parameters;
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastSwatch;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.ContrastSwatchCache;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.Image;
+import com.google.android.apps.common.testing.accessibility.framework.utils.contrast.TiledColorIndex;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Finds the {@link ContrastSwatch} of a view for the contrast checks. If the check's {@link
+ * Parameters} enable the {@link TiledColorIndex}, the swatch is computed from the index; otherwise
+ * the analysis of an identical region of the screen capture is reused from the {@link
+ * ContrastSwatchCache} when possible.
+ */
+final class ContrastSwatchLookup {
+
+  private ContrastSwatchLookup() {}
+
+  /**
+   * Returns the {@link ContrastSwatch} for {@code viewImage}. This is computed from the tiled color
+   * index in {@code parameters} if it is enabled, taken from the cache in {@code parameters} if it
+   * holds one for the same region, or else computed by {@code computation} and stored in the cache.
+   *
+   * @param viewImage the region of the screen capture to evaluate
+   * @param viewBounds the bounds of {@code viewImage} within the screen capture
+   * @param parameters Optional check input parameters
+   * @param pixelBudget the pixel budget to which {@code computation} samples the region, or {@code
+   *     null} if it analyzes every pixel. The tiled color index does not sample.
+   * @param computation computes the swatch when it is not cached
+   */
+  static ContrastSwatch getContrastSwatch(
+      Image viewImage,
+      Rect viewBounds,
+      @Nullable Parameters parameters,
+      @Nullable Integer pixelBudget,
+      SwatchComputation computation) {
+    boolean multipleForegroundColors =
+        (parameters != null)
+            && Boolean.TRUE.equals(parameters.getEnableEnhancedContrastEvaluation());
+    @Nullable TiledColorIndex tiledColorIndex =
+        (parameters == null) ? null : parameters.getTiledColorIndex();
+    if (tiledColorIndex != null) {
+      // Computing a swatch from the index is cheap, so these are not cached.
+      return tiledColorIndex.getContrastSwatch(
+          viewBounds.getLeft(),
+          viewBounds.getTop(),
+          viewBounds.getWidth(),
+          viewBounds.getHeight(),
+          multipleForegroundColors);
+    }
+
+    @Nullable ContrastSwatchCache cache =
+        (parameters == null) ? null : parameters.getContrastSwatchCache();
+    if (cache == null) {
+      return computation.compute(viewImage);
+    }
+    int budget = (pixelBudget == null) ? ContrastSwatch.UNLIMITED_PIXEL_BUDGET : pixelBudget;
+    ContrastSwatch contrastSwatch = cache.get(viewBounds, multipleForegroundColors, budget);
+    if (contrastSwatch == null) {
+      contrastSwatch =
+          cache.put(viewBounds, multipleForegroundColors, budget, computation.compute(viewImage));
+    }
+    return contrastSwatch;
+  }
+
+  /** Computes the {@link ContrastSwatch} of a region of the screen capture. */
+  interface SwatchComputation {
+    ContrastSwatch compute(Image viewImage);
+  }
+}
@@ -105,15 +105,13 @@ public class DuplicateClickableBoundsCheck extends AccessibilityHierarchyCheck {
         getLocationActionToViewMap(hierarchy.getActiveWindow().getAllViews());
 
     /* Deal with any duplicate bounds within our set of elements to evaluate */
-    List<? extends ViewHierarchyElement> viewsToEval =
-        (fromRoot != null) ? fromRoot.getSelfAndAllDescendants() : null;
     for (List<? extends ViewHierarchyElement> elements : locationActionToViewMap.values()) {
       if (elements.size() < 2) {
         continue; // Bounds are not duplicated
       }
 
       for (ViewHierarchyElement culprit : elements) {
-        if ((viewsToEval == null) || viewsToEval.contains(culprit)) {
+        if ((fromRoot == null) || culprit.isSelfOrDescendantOf(fromRoot)) {
           ResultMetadata resultMetadata = new HashMapResultMetadata();
           resultMetadata.putBoolean(KEY_CONFLICTS_BECAUSE_CLICKABLE, culprit.isClickable());
           resultMetadata
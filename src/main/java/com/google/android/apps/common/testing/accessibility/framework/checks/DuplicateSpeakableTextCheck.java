@@ -28,6 +28,8 @@ import com.google.android.apps.common.testing.accessibility.framework.replacemen
 import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewTreeIndex;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.WindowHierarchyElement;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -75,60 +77,76 @@ public class DuplicateSpeakableTextCheck extends AccessibilityHierarchyCheck {
     List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
 
     /* Find all text and the views that have that text throughout the full hierarchy */
+    WindowHierarchyElement activeWindow = hierarchy.getActiveWindow();
     Map<String, List<ViewHierarchyElement>> textToViewMap =
         getSpeakableTextToViewMap(
-            hierarchy.getActiveWindow().getAllViews(), hierarchy.getDeviceState().getLocale());
+            activeWindow.getAllViews(), hierarchy.getDeviceState().getLocale());
+
+    // The views within scope for evaluation occupy one range of positions in pre-order, which is
+    // found once rather than for each duplicated text.
+    ViewTreeIndex treeIndex = activeWindow.getViewTreeIndex();
+    int scopeStart = 0;
+    int scopeEnd = treeIndex.size();
+    if (fromRoot != null) {
+      if (fromRoot.getWindow() == activeWindow) {
+        scopeStart = treeIndex.getPreorderIndex(fromRoot.getId());
+        scopeEnd = treeIndex.getSubtreeEnd(fromRoot.getId());
+      } else {
+        scopeEnd = scopeStart;
+      }
+    }
 
     /* Deal with any duplicated text */
-    for (String speakableText : textToViewMap.keySet()) {
-      if (textToViewMap.get(speakableText).size() < 2) {
+    for (Map.Entry<String, List<ViewHierarchyElement>> entry : textToViewMap.entrySet()) {
+      List<ViewHierarchyElement> views = entry.getValue();
+      if (views.size() < 2) {
         continue; // Text is not duplicated
       }
 
-      // We've found duplicated text. Sort the Views into clickable and non-clickable if they're
-      // within scope for evaluation.
-      List<ViewHierarchyElement> clickableViews = new ArrayList<>();
-      List<ViewHierarchyElement> nonClickableViews = new ArrayList<>();
-      List<? extends ViewHierarchyElement> viewsToEval =
-          (fromRoot != null) ? fromRoot.getSelfAndAllDescendants() : null;
-      for (ViewHierarchyElement view : textToViewMap.get(speakableText)) {
-        if ((viewsToEval == null) || viewsToEval.contains(view)) {
-          if (Boolean.TRUE.equals(view.isClickable())) {
-            clickableViews.add(view);
-          } else {
-            nonClickableViews.add(view);
+      // We've found duplicated text. Count the clickable and non-clickable views within scope for
+      // evaluation, noting the first of each.
+      @Nullable ViewHierarchyElement firstClickableView = null;
+      @Nullable ViewHierarchyElement firstNonClickableView = null;
+      int viewsInScope = 0;
+      for (ViewHierarchyElement view : views) {
+        int preorderIndex = treeIndex.getPreorderIndex(view.getId());
+        if ((preorderIndex < scopeStart) || (preorderIndex >= scopeEnd)) {
+          continue;
+        }
+        viewsInScope++;
+        if (Boolean.TRUE.equals(view.isClickable())) {
+          if (firstClickableView == null) {
+            firstClickableView = view;
           }
+        } else if (firstNonClickableView == null) {
+          firstNonClickableView = view;
         }
       }
 
-      if (!clickableViews.isEmpty()) {
+      if (firstClickableView != null) {
         /* Display warning */
         ResultMetadata resultMetadata = new HashMapResultMetadata();
         resultMetadata.putString(
-            KEY_SPEAKABLE_TEXT, speakableText);
-        resultMetadata.putInt(KEY_CONFLICTING_VIEW_COUNT,
-            (clickableViews.size() + nonClickableViews.size() - 1));
+            KEY_SPEAKABLE_TEXT, entry.getKey());
+        resultMetadata.putInt(KEY_CONFLICTING_VIEW_COUNT, (viewsInScope - 1));
         results.add(new AccessibilityHierarchyCheckResult(
             this.getClass(),
             AccessibilityCheckResultType.WARNING,
-            clickableViews.get(0),
+            firstClickableView,
             RESULT_ID_CLICKABLE_SAME_SPEAKABLE_TEXT,
             resultMetadata));
-        clickableViews.remove(0);
-      } else if (!nonClickableViews.isEmpty()) {
+      } else if (firstNonClickableView != null) {
         /* Only duplication is on non-clickable views */
         ResultMetadata resultMetadata = new HashMapResultMetadata();
         resultMetadata.putString(
-            KEY_SPEAKABLE_TEXT, speakableText);
-        resultMetadata.putInt(KEY_CONFLICTING_VIEW_COUNT,
-            (clickableViews.size() + nonClickableViews.size() - 1));
+            KEY_SPEAKABLE_TEXT, entry.getKey());
+        resultMetadata.putInt(KEY_CONFLICTING_VIEW_COUNT, (viewsInScope - 1));
         results.add(new AccessibilityHierarchyCheckResult(
             this.getClass(),
             AccessibilityCheckResultType.INFO,
-            nonClickableViews.get(0),
+            firstNonClickableView,
             RESULT_ID_NON_CLICKABLE_SAME_SPEAKABLE_TEXT,
             resultMetadata));
-        nonClickableViews.remove(0);
       }
     }
 
@@ -226,10 +244,13 @@ public class DuplicateSpeakableTextCheck extends AccessibilityHierarchyCheck {
         continue;
       }
 
-      if (!textToViewMap.containsKey(speakableText)) {
-        textToViewMap.put(speakableText, new ArrayList<ViewHierarchyElement>());
+      @Nullable List<ViewHierarchyElement> views = textToViewMap.get(speakableText);
+      if (views == null) {
+        // Most texts are not duplicated, so a list is allocated for just one view at first.
+        views = new ArrayList<>(1);
+        textToViewMap.put(speakableText, views);
       }
-      textToViewMap.get(speakableText).add(view);
+      views.add(view);
     }
     return textToViewMap;
   }
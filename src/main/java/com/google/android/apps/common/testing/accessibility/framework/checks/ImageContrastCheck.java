@@ -93,6 +93,11 @@ public class ImageContrastCheck extends AccessibilityHierarchyCheck {
   public static final String KEY_ADDITIONAL_FOREGROUND_COLORS = "KEY_ADDITIONAL_FOREGROUND_COLORS";
   /** Result metadata key for the {@code ArrayList<String>} computed contrast ratio. */
   public static final String KEY_ADDITIONAL_CONTRAST_RATIOS = "KEY_ADDITIONAL_CONTRAST_RATIOS";
+  /**
+   * Result metadata key for the {@code int} distance between analyzed pixels, present only when
+   * the view's image was sampled rather than analyzed in full.
+   */
+  public static final String KEY_SAMPLING_STRIDE = "KEY_SAMPLING_STRIDE";
 
   /** The amount by which a view's computed contrast ratio may fall below defined thresholds */
   public static final double CONTRAST_TOLERANCE = 0.01;
@@ -110,13 +115,22 @@ public class ImageContrastCheck extends AccessibilityHierarchyCheck {
     return Category.LOW_CONTRAST;
   }
 
+  @Override
+  public boolean evaluatesElementsIndependently() {
+    return true;
+  }
+
   @Override
   public List<AccessibilityHierarchyCheckResult> runCheckOnHierarchy(
       AccessibilityHierarchy hierarchy,
       @Nullable ViewHierarchyElement fromRoot,
       @Nullable Parameters parameters) {
-    List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
-    List<? extends ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
+    // Heavyweight evaluations only read the screen capture, so they may run concurrently.
+    OrderedCheckResults results =
+        new OrderedCheckResults(
+            (parameters == null) ? null : parameters.getContrastEvaluationExecutor());
+    List<? extends ViewHierarchyElement> viewsToEval =
+        getElementsToEvaluate(fromRoot, hierarchy, parameters);
     for (ViewHierarchyElement view : viewsToEval) {
       if (!Boolean.TRUE.equals(view.isVisibleToUser())) {
         results.add(
@@ -151,14 +165,10 @@ public class ImageContrastCheck extends AccessibilityHierarchyCheck {
         continue;
       }
 
-      AccessibilityHierarchyCheckResult heavyweightResult =
-          attemptHeavyweightEval(view, parameters);
-      if (heavyweightResult != null) {
-        results.add(heavyweightResult);
-      }
+      results.addEvaluation(() -> attemptHeavyweightEval(view, parameters));
     }
 
-    return results;
+    return results.getResults();
   }
 
   /**
@@ -200,14 +210,24 @@ public class ImageContrastCheck extends AccessibilityHierarchyCheck {
 
     // viewBounds cannot be out of bounds because the bounds were checked above.
     Image viewImage = crop(screenCapture, viewBounds);
+    @Nullable Boolean enableEnhancedContrastEvaluation =
+        (parameters == null) ? null : parameters.getEnableEnhancedContrastEvaluation();
+    @Nullable Integer pixelBudget =
+        (parameters == null) ? null : parameters.getImageContrastPixelBudget();
     ContrastSwatch contrastSwatch =
-        getContrastSwatch(
+        ContrastSwatchLookup.getContrastSwatch(
             viewImage,
-            (parameters == null) ? null : parameters.getEnableEnhancedContrastEvaluation());
+            viewBounds,
+            parameters,
+            pixelBudget,
+            image -> getContrastSwatch(image, enableEnhancedContrastEvaluation, pixelBudget));
     ResultMetadata resultMetadata = new HashMapResultMetadata();
     if (view.isAgainstScrollableEdge()) {
       resultMetadata.putBoolean(KEY_IS_AGAINST_SCROLLABLE_EDGE, true);
     }
+    if (contrastSwatch.isSampled()) {
+      resultMetadata.putInt(KEY_SAMPLING_STRIDE, contrastSwatch.getSamplingStride());
+    }
     int foreground = contrastSwatch.getForegroundColors().get(0);
     int background = contrastSwatch.getBackgroundColor();
 
@@ -387,6 +407,23 @@ public class ImageContrastCheck extends AccessibilityHierarchyCheck {
         (enableEnhancedContrastEvaluation == null) ? false : enableEnhancedContrastEvaluation);
   }
 
+  /**
+   * Returns a {@link ContrastSwatch} for {@code image}, sampled to fit {@code pixelBudget} if one
+   * is specified.
+   */
+  private ContrastSwatch getContrastSwatch(
+      Image image,
+      @Nullable Boolean enableEnhancedContrastEvaluation,
+      @Nullable Integer pixelBudget) {
+    if (pixelBudget == null) {
+      return getContrastSwatch(image, enableEnhancedContrastEvaluation);
+    }
+    return new ContrastSwatch(
+        image,
+        (enableEnhancedContrastEvaluation == null) ? false : enableEnhancedContrastEvaluation,
+        pixelBudget);
+  }
+
   private static Image crop(Image screenCapture, Rect viewBounds) {
     return screenCapture.crop(
         viewBounds.getLeft(), viewBounds.getTop(), viewBounds.getWidth(), viewBounds.getHeight());
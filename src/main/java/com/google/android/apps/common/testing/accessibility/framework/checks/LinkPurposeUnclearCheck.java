@@ -31,7 +31,6 @@ import com.google.android.apps.common.testing.accessibility.framework.strings.St
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Ascii;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
 import java.util.List;
@@ -61,6 +60,8 @@ public class LinkPurposeUnclearCheck extends AccessibilityHierarchyCheck {
       ImmutableList.of(
           "click", "tap", "go", "here", "learn", "more", "this", "page", "link", "about");
 
+  private static final WordMatcher STOPWORD_MATCHER = new WordMatcher(ENGLISH_STOPWORDS);
+
   private static final Pattern WORD_PATTERN = Pattern.compile("\\w+");
 
   @Override
@@ -131,7 +132,7 @@ public class LinkPurposeUnclearCheck extends AccessibilityHierarchyCheck {
   static boolean hasOnlyStopwords(CharSequence linkText) {
     Matcher m = WORD_PATTERN.matcher(linkText);
     while (m.find()) {
-      if (!isStopword(m.group())) {
+      if (!STOPWORD_MATCHER.isWord(linkText, m.start(), m.end())) {
         return false;
       }
     }
@@ -139,17 +140,6 @@ public class LinkPurposeUnclearCheck extends AccessibilityHierarchyCheck {
     return true;
   }
 
-  /** Is this one of the ENGLISH_STOPWORDS, ignoring case? */
-
-  private static boolean isStopword(String term) {
-    for (String word : ENGLISH_STOPWORDS) {
-      if (Ascii.equalsIgnoreCase(word, term)) {
-        return true;
-      }
-    }
-    return false;
-  }
-
   @Override
   public String getMessageForResultData(
       Locale locale, int resultId, @Nullable ResultMetadata metadata) {
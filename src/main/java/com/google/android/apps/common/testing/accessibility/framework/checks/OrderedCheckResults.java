@@ -0,0 +1,100 @@
+package com.google.android.apps.common.testing.accessibility.framework.checks;
+
+import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Accumulates the results of a check in traversal order, where some results may be computed on an
+ * {@link Executor}. Results are returned in the order in which they were added, regardless of the
+ * order in which asynchronous evaluations complete.
+ */
+final class OrderedCheckResults {
+
+  private final @Nullable Executor executor;
+
+  /** Each entry is either an {@link AccessibilityHierarchyCheckResult} or a pending evaluation. */
+  private final List<Object> entries = new ArrayList<>();
+
+  /**
+   * @param executor the executor on which to run evaluations added with {@link
+   *     #addEvaluation(Callable)}, or {@code null} to run them immediately on the calling thread
+   */
+  OrderedCheckResults(@Nullable Executor executor) {
+    this.executor = executor;
+  }
+
+  /** Adds a result which has already been computed. */
+  void add(AccessibilityHierarchyCheckResult result) {
+    entries.add(result);
+  }
+
+  /**
+   * Adds the result of an evaluation which may run asynchronously. If the evaluation returns
+   * {@code null}, no result is added in its place.
+   */
+  void addEvaluation(Callable<@Nullable AccessibilityHierarchyCheckResult> evaluation) {
+    if (executor == null) {
+      AccessibilityHierarchyCheckResult result = call(evaluation);
+      if (result != null) {
+        entries.add(result);
+      }
+      return;
+    }
+
+    FutureTask<@Nullable AccessibilityHierarchyCheckResult> task = new FutureTask<>(evaluation);
+    executor.execute(task);
+    entries.add(task);
+  }
+
+  /**
+   * Waits for all pending evaluations and returns the results in the order in which they were
+   * added. An exception thrown by an evaluation is rethrown here.
+   */
+  List<AccessibilityHierarchyCheckResult> getResults() {
+    List<AccessibilityHierarchyCheckResult> results = new ArrayList<>(entries.size());
+    for (Object entry : entries) {
+      if (entry instanceof Future) {
+        @SuppressWarnings("unchecked") // Only FutureTasks of results are added to entries.
+        Future<@Nullable AccessibilityHierarchyCheckResult> future =
+            (Future<@Nullable AccessibilityHierarchyCheckResult>) entry;
+        AccessibilityHierarchyCheckResult result = getDone(future);
+        if (result != null) {
+          results.add(result);
+        }
+      } else {
+        results.add((AccessibilityHierarchyCheckResult) entry);
+      }
+    }
+    return results;
+  }
+
+  private static @Nullable AccessibilityHierarchyCheckResult call(
+      Callable<@Nullable AccessibilityHierarchyCheckResult> evaluation) {
+    try {
+      return evaluation.call();
+    } catch (Exception e) {
+      Throwables.throwIfUnchecked(e);
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static @Nullable AccessibilityHierarchyCheckResult getDone(
+      Future<@Nullable AccessibilityHierarchyCheckResult> future) {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      Throwable cause = (e.getCause() == null) ? e : e.getCause();
+      Throwables.throwIfUnchecked(cause);
+      throw new IllegalStateException(cause);
+    }
+  }
+}
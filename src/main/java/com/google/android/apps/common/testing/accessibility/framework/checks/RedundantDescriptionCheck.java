@@ -30,9 +30,11 @@ import com.google.android.apps.common.testing.accessibility.framework.uielement.
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
@@ -102,6 +104,18 @@ public class RedundantDescriptionCheck extends AccessibilityHierarchyCheck {
   private static final ImmutableList<String> ACTION_WORD_KEYS =
       ImmutableList.of("click_action", "swipe_action", "tap_action");
 
+  /** Keys of String resources for every redundant word, in the order in which they are checked. */
+  private static final ImmutableList<String> ALL_WORD_KEYS =
+      ImmutableList.<String>builder()
+          .addAll(ITEM_TYPE_WORD_KEYS)
+          .addAll(STATE_WORD_KEYS)
+          .addAll(ACTION_WORD_KEYS)
+          .build();
+
+  /** Matchers compiled from the localized words of {@link #ALL_WORD_KEYS}, keyed by the words. */
+  private static final Map<ImmutableList<String>, WordMatcher> WORD_MATCHERS =
+      new ConcurrentHashMap<>();
+
   @Override
   protected String getHelpTopic() {
     return "6378990"; // Items labeled with type or state
@@ -112,6 +126,11 @@ public class RedundantDescriptionCheck extends AccessibilityHierarchyCheck {
     return Category.CONTENT_LABELING;
   }
 
+  @Override
+  public boolean evaluatesElementsIndependently() {
+    return true;
+  }
+
   @Override
   public List<AccessibilityHierarchyCheckResult> runCheckOnHierarchy(
       AccessibilityHierarchy hierarchy,
@@ -120,7 +139,10 @@ public class RedundantDescriptionCheck extends AccessibilityHierarchyCheck {
     List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
     Locale recordedLocale = getRecordedLocale(hierarchy);
 
-    List<? extends ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
+    List<? extends ViewHierarchyElement> viewsToEval =
+        getElementsToEvaluate(fromRoot, hierarchy, parameters);
+    @Nullable ImmutableList<String> words = null;
+    @Nullable WordMatcher wordMatcher = null;
     for (ViewHierarchyElement view : viewsToEval) {
       if (!Boolean.TRUE.equals(view.isVisibleToUser())) {
         results.add(
@@ -154,48 +176,74 @@ public class RedundantDescriptionCheck extends AccessibilityHierarchyCheck {
                 null));
         continue;
       }
+      if ((words == null) || (wordMatcher == null)) {
+        words = getLocalizedWords(recordedLocale);
+        wordMatcher = getWordMatcher(words);
+      }
       // This can potentially produce multiple results for one element.
-      checkForWords(
-          RESULT_ID_CONTENT_DESC_CONTAINS_ITEM_TYPE,
-          ITEM_TYPE_WORD_KEYS,
-          recordedLocale,
-          view,
-          results);
-      checkForWords(
-          RESULT_ID_CONTENT_DESC_CONTAINS_STATE, STATE_WORD_KEYS, recordedLocale, view, results);
-      checkForWords(
-          RESULT_ID_CONTENT_DESC_CONTAINS_ACTION, ACTION_WORD_KEYS, recordedLocale, view, results);
+      checkForWords(words, wordMatcher, view, results);
     }
     return results;
   }
 
   /**
-   * Checks to see if the view's {@code contentDescription} contains any of the localized words
-   * indicated by {@code wordKeys}. If found, a WARNING is added to {@code results} with the
-   * specified result ID.
+   * Checks to see if the view's {@code contentDescription} contains any of the localized {@code
+   * words} for {@link #ALL_WORD_KEYS}, looking for all of them in a single pass. For each one
+   * found, a WARNING is added to {@code results} with the result ID for the type of the word.
    */
   private void checkForWords(
-      int resultId,
-      ImmutableList<String> wordKeys,
-      Locale locale,
+      ImmutableList<String> words,
+      WordMatcher wordMatcher,
       ViewHierarchyElement view,
       List<AccessibilityHierarchyCheckResult> results) {
     CharSequence contentDescription = checkNotNull(view.getContentDescription());
-    for (String wordKey : wordKeys) {
-      String word = StringManager.getString(locale, wordKey);
-      if (containsWordIgnoreCase(contentDescription, word)) {
-        ResultMetadata resultMetadata = new HashMapResultMetadata();
-        resultMetadata.putString(KEY_CONTENT_DESCRIPTION, contentDescription.toString());
-        resultMetadata.putString(KEY_REDUNDANT_WORD, word);
-        results.add(
-            new AccessibilityHierarchyCheckResult(
-                this.getClass(),
-                AccessibilityCheckResultType.WARNING,
-                view,
-                resultId,
-                resultMetadata));
-      }
+    BitSet found = wordMatcher.findWords(contentDescription);
+    for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+      String word = words.get(i);
+      int resultId = getResultIdForWordKey(i);
+      ResultMetadata resultMetadata = new HashMapResultMetadata();
+      resultMetadata.putString(KEY_CONTENT_DESCRIPTION, contentDescription.toString());
+      resultMetadata.putString(KEY_REDUNDANT_WORD, word);
+      results.add(
+          new AccessibilityHierarchyCheckResult(
+              this.getClass(),
+              AccessibilityCheckResultType.WARNING,
+              view,
+              resultId,
+              resultMetadata));
+    }
+  }
+
+  /** Returns the localized word for each of {@link #ALL_WORD_KEYS}. */
+  private static ImmutableList<String> getLocalizedWords(Locale locale) {
+    ImmutableList.Builder<String> words = ImmutableList.builder();
+    for (String wordKey : ALL_WORD_KEYS) {
+      words.add(StringManager.getString(locale, wordKey));
+    }
+    return words.build();
+  }
+
+  /**
+   * Returns a matcher for a list of localized words. Matchers are keyed by the words rather than
+   * the locale, so that they remain correct if the source of localized strings changes.
+   */
+  private static WordMatcher getWordMatcher(ImmutableList<String> words) {
+    @Nullable WordMatcher wordMatcher = WORD_MATCHERS.get(words);
+    if (wordMatcher == null) {
+      wordMatcher = new WordMatcher(words);
+      WORD_MATCHERS.put(words, wordMatcher);
+    }
+    return wordMatcher;
+  }
+
+  /** Returns the result ID for a word, given the position of its key in {@link #ALL_WORD_KEYS}. */
+  private static int getResultIdForWordKey(int index) {
+    if (index < ITEM_TYPE_WORD_KEYS.size()) {
+      return RESULT_ID_CONTENT_DESC_CONTAINS_ITEM_TYPE;
+    } else if (index < ITEM_TYPE_WORD_KEYS.size() + STATE_WORD_KEYS.size()) {
+      return RESULT_ID_CONTENT_DESC_CONTAINS_STATE;
     }
+    return RESULT_ID_CONTENT_DESC_CONTAINS_ACTION;
   }
 
   @Override
@@ -285,13 +333,6 @@ public class RedundantDescriptionCheck extends AccessibilityHierarchyCheck {
     return StringManager.getString(locale, "check_title_redundant_description");
   }
 
-  private static boolean containsWordIgnoreCase(CharSequence sequence, CharSequence word) {
-    // Dot . generally matches any character, but it excludes \n, \r, \u0085, \u2028, and \u2029.
-    // (?s) at the beginning makes . matches any character without exception.
-    // (?i) is used for ignore case match. \b matches word boundary.
-    return Pattern.matches("(?s).*\\b(?i)" + word + "\\b.*", sequence.toString());
-  }
-
   /** Indicates the locale recorded in the {@link DeviceState}. */
   private static Locale getRecordedLocale(AccessibilityHierarchy hierarchy) {
     return hierarchy.getDeviceState().getLocale();
@@ -65,13 +65,19 @@ public class SpeakableTextPresentCheck extends AccessibilityHierarchyCheck {
     return Category.CONTENT_LABELING;
   }
 
+  @Override
+  public boolean evaluatesElementsIndependently() {
+    return true;
+  }
+
   @Override
   public List<AccessibilityHierarchyCheckResult> runCheckOnHierarchy(
       AccessibilityHierarchy hierarchy,
       @Nullable ViewHierarchyElement fromRoot,
       @Nullable Parameters parameters) {
     List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
-    List<? extends ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
+    List<? extends ViewHierarchyElement> viewsToEval =
+        getElementsToEvaluate(fromRoot, hierarchy, parameters);
     for (ViewHierarchyElement element : viewsToEval) {
       if (!TRUE.equals(element.isVisibleToUser())) {
         results.add(new AccessibilityHierarchyCheckResult(
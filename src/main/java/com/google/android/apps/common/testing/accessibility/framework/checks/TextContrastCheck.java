@@ -184,13 +184,22 @@ public class TextContrastCheck extends AccessibilityHierarchyCheck {
     return Category.LOW_CONTRAST;
   }
 
+  @Override
+  public boolean evaluatesElementsIndependently() {
+    return true;
+  }
+
   @Override
   public List<AccessibilityHierarchyCheckResult> runCheckOnHierarchy(
       AccessibilityHierarchy hierarchy,
       @Nullable ViewHierarchyElement fromRoot,
       @Nullable Parameters parameters) {
-    List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
-    List<? extends ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
+    // Heavyweight evaluations only read the screen capture, so they may run concurrently.
+    OrderedCheckResults results =
+        new OrderedCheckResults(
+            (parameters == null) ? null : parameters.getContrastEvaluationExecutor());
+    List<? extends ViewHierarchyElement> viewsToEval =
+        getElementsToEvaluate(fromRoot, hierarchy, parameters);
     for (ViewHierarchyElement view : viewsToEval) {
       if (!Boolean.TRUE.equals(view.isVisibleToUser())) {
         results.add(
@@ -263,15 +272,11 @@ public class TextContrastCheck extends AccessibilityHierarchyCheck {
         }
       }
       if (runHeavyWeightEval) {
-        AccessibilityHierarchyCheckResult heavyweightResult =
-            attemptHeavyweightEval(view, parameters);
-        if (heavyweightResult != null) {
-          results.add(heavyweightResult);
-        }
+        results.addEvaluation(() -> attemptHeavyweightEval(view, parameters));
       }
     }
 
-    return results;
+    return results.getResults();
   }
 
   @Override
@@ -880,10 +885,15 @@ public class TextContrastCheck extends AccessibilityHierarchyCheck {
 
     // viewBounds cannot be out of bounds because the bounds were checked above.
     Image viewImage = crop(screenCapture, viewBounds);
+    @Nullable Boolean enableEnhancedContrastEvaluation =
+        (parameters == null) ? null : parameters.getEnableEnhancedContrastEvaluation();
     ContrastSwatch contrastSwatch =
-        getContrastSwatch(
+        ContrastSwatchLookup.getContrastSwatch(
             viewImage,
-            (parameters == null) ? null : parameters.getEnableEnhancedContrastEvaluation());
+            viewBounds,
+            parameters,
+            /* pixelBudget= */ null,
+            image -> getContrastSwatch(image, enableEnhancedContrastEvaluation));
     ResultMetadata resultMetadata = new HashMapResultMetadata();
     if (view.isAgainstScrollableEdge()) {
       resultMetadata.putBoolean(KEY_IS_AGAINST_SCROLLABLE_EDGE, true);
@@ -34,8 +34,10 @@ import com.google.android.apps.common.testing.accessibility.framework.uielement.
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
 import com.google.common.annotations.VisibleForTesting;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
@@ -175,6 +177,11 @@ public class TouchTargetSizeCheck extends AccessibilityHierarchyCheck {
     return Category.TOUCH_TARGET_SIZE;
   }
 
+  @Override
+  public boolean evaluatesElementsIndependently() {
+    return true;
+  }
+
   @Override
   public List<AccessibilityHierarchyCheckResult> runCheckOnHierarchy(
       AccessibilityHierarchy hierarchy,
@@ -184,7 +191,9 @@ public class TouchTargetSizeCheck extends AccessibilityHierarchyCheck {
 
     DisplayInfo defaultDisplay = hierarchy.getDeviceState().getDefaultDisplayInfo();
     DisplayInfo.Metrics metricsWithoutDecorations = defaultDisplay.getMetricsWithoutDecoration();
-    List<? extends ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
+    List<? extends ViewHierarchyElement> viewsToEval =
+        getElementsToEvaluate(fromRoot, hierarchy, parameters);
+    AncestorStates ancestorStates = new AncestorStates(parameters);
     for (ViewHierarchyElement view : viewsToEval) {
       if (!(TRUE.equals(view.isClickable())
           || TRUE.equals(view.isLongClickable()))) {
@@ -233,14 +242,14 @@ public class TouchTargetSizeCheck extends AccessibilityHierarchyCheck {
           // Without hit-Rects, another approach is to check (View) ancestors for the presence of
           // any TouchDelegate, which indicates that the element may have its hit-Rect adjusted,
           // but does not tell us what its size is.
-          hasDelegate = hasAncestorWithTouchDelegate(view);
+          hasDelegate = ancestorStates.hasAncestorWithTouchDelegate(view);
         }
         // Another approach is to have the parent handle touches for smaller child views, such as a
         // android.widget.Switch, which retains its clickable state for a "handle drag" effect. In
         // these cases, the parent must perform the same action as the child, which is beyond the
         // scope of this test.  We append this important exception message to the result by setting
         // KEY_HAS_CLICKABLE_ANCESTOR within the result metadata.
-        boolean hasClickableAncestor = hasQualifyingClickableAncestor(view, parameters);
+        boolean hasClickableAncestor = ancestorStates.hasQualifyingClickableAncestor(view);
         // When evaluating a View-based hierarchy, we can check if the visible size of the view is
         // less than the drawing (nonclipped) size, which indicates an ancestor may scroll,
         // expand/collapse, or otherwise constrain the size of the clickable item.
@@ -248,7 +257,7 @@ public class TouchTargetSizeCheck extends AccessibilityHierarchyCheck {
         // Web content exposed through an AccessibilityNodeInfo-based hierarchy from WebView cannot
         // precisely represent the clickable area for DOM elements in a number of cases. We reduce
         // severity and append a message recommending manual testing when encountering WebView.
-        boolean isWebContent = hasWebViewAncestor(view);
+        boolean isWebContent = ancestorStates.hasWebViewAncestor(view);
 
         // In each of these cases, with the exception of when we have precise hit-Rect coordinates,
         // we cannot determine how exactly click actions are being handled by the underlying
@@ -606,55 +615,6 @@ public class TouchTargetSizeCheck extends AccessibilityHierarchyCheck {
     return largestHitRect;
   }
 
-  /**
-   * Determines if any view in the hierarchy above the provided {@code view} has a {@link
-   * android.view.TouchDelegate} set.
-   *
-   * @param view the {@link ViewHierarchyElement} to evaluate
-   * @return {@code true} if an ancestor has a {@link android.view.TouchDelegate} set, {@code false}
-   * if no delegate is set or if this could not be determined.
-   */
-  private static boolean hasAncestorWithTouchDelegate(ViewHierarchyElement view) {
-    for (ViewHierarchyElement evalView = view.getParentView(); evalView != null;
-        evalView = evalView.getParentView()) {
-      if (TRUE.equals(evalView.hasTouchDelegate())) {
-        return true;
-      }
-    }
-    return false;
-  }
-
-  /**
-   * Determines if any view in the hierarchy above the provided {@code view} matches {@code view}'s
-   * clickability and meets its minimum allowable size.
-   *
-   * @param view the {@link ViewHierarchyElement} to evaluate
-   * @param parameters Optional check input parameters
-   * @return {@code true} if any view in {@code view}'s ancestry that is clickable and/or
-   *     long-clickable and meets its minimum allowable size.
-   */
-  private static boolean hasQualifyingClickableAncestor(
-      ViewHierarchyElement view, @Nullable Parameters parameters) {
-    boolean isTargetClickable = TRUE.equals(view.isClickable());
-    boolean isTargetLongClickable = TRUE.equals(view.isLongClickable());
-    ViewHierarchyElement evalView = view.getParentView();
-
-    while (evalView != null) {
-      if ((TRUE.equals(evalView.isClickable()) && isTargetClickable)
-          || (TRUE.equals(evalView.isLongClickable()) && isTargetLongClickable)) {
-        Point requiredSize = getMinimumAllowableSizeForView(evalView, parameters);
-        Rect bounds = evalView.getBoundsInScreen();
-        if (!evalView.checkInstanceOf(ABS_LIST_VIEW_CLASS_NAME)
-            && (bounds.getHeight() >= requiredSize.getY())
-            && (bounds.getWidth() >= requiredSize.getX())) {
-          return true;
-        }
-      }
-      evalView = evalView.getParentView();
-    }
-    return false;
-  }
-
   /**
    * Determines if the provided {@code view} is possibly clipped by one of its ancestor views in
    * such a way that it may be sufficiently sized if the view were not clipped.
@@ -686,19 +646,6 @@ public class TouchTargetSizeCheck extends AccessibilityHierarchyCheck {
     return (clippedTooSmallY && !nonclippedTooSmallY) || (clippedTooSmallX && !nonclippedTooSmallX);
   }
 
-  /**
-   * Identifies web content by checking the ancestors of {@code view} for elements which are WebView
-   * containers.
-   *
-   * @param view the {@link ViewHierarchyElement} to evaluate
-   * @return {@code true} if {@code WebView} was identified as an ancestor, {@code false} otherwise
-   */
-  private static boolean hasWebViewAncestor(ViewHierarchyElement view) {
-    ViewHierarchyElement parent = view.getParentView();
-    return (parent != null)
-        && (parent.checkInstanceOf(WEB_VIEW_CLASS_NAME) || hasWebViewAncestor(parent));
-  }
-
   /**
    * Appends result messages for additional metadata fields to the provided {@code builder} if the
    * relevant keys are set in the given {@code resultMetadata}.
@@ -753,4 +700,144 @@ public class TouchTargetSizeCheck extends AccessibilityHierarchyCheck {
               StringManager.getString(locale, "result_message_addendum_against_scrollable_edge"));
     }
   }
+
+  /**
+   * What is known about the ancestors of each view, determined once for every view rather than by
+   * walking to the root from each view which is too small. The state of a view is derived from that
+   * of its parent, so it is carried down the tree from the nearest ancestor whose state is known.
+   */
+  private static final class AncestorStates {
+
+    /** Set for every view whose state, or own state, has been determined. */
+    private static final int KNOWN = 1;
+    private static final int TOUCH_DELEGATE = 1 << 1;
+    private static final int QUALIFYING_CLICKABLE = 1 << 2;
+    private static final int QUALIFYING_LONG_CLICKABLE = 1 << 3;
+    private static final int WEB_VIEW = 1 << 4;
+
+    private final @Nullable Parameters parameters;
+
+    /** For each window, by id, the state of the ancestors of each view, by id. */
+    private final Map<Integer, byte[]> windowStates = new HashMap<>();
+
+    /**
+     * For each window, by id, the state that each view, by id, contributes to that of its
+     * descendants, so that it is determined once however many children the view has.
+     */
+    private final Map<Integer, byte[]> windowOwnStates = new HashMap<>();
+
+    AncestorStates(@Nullable Parameters parameters) {
+      this.parameters = parameters;
+    }
+
+    /**
+     * Determines if any view in the hierarchy above the provided {@code view} has a {@link
+     * android.view.TouchDelegate} set.
+     *
+     * @param view the {@link ViewHierarchyElement} to evaluate
+     * @return {@code true} if an ancestor has a {@link android.view.TouchDelegate} set, {@code
+     *     false} if no delegate is set or if this could not be determined.
+     */
+    boolean hasAncestorWithTouchDelegate(ViewHierarchyElement view) {
+      return (getState(view) & TOUCH_DELEGATE) != 0;
+    }
+
+    /**
+     * Determines if any view in the hierarchy above the provided {@code view} matches {@code
+     * view}'s clickability and meets its minimum allowable size.
+     *
+     * @param view the {@link ViewHierarchyElement} to evaluate
+     * @return {@code true} if any view in {@code view}'s ancestry that is clickable and/or
+     *     long-clickable and meets its minimum allowable size.
+     */
+    boolean hasQualifyingClickableAncestor(ViewHierarchyElement view) {
+      int state = getState(view);
+      return (TRUE.equals(view.isClickable()) && ((state & QUALIFYING_CLICKABLE) != 0))
+          || (TRUE.equals(view.isLongClickable()) && ((state & QUALIFYING_LONG_CLICKABLE) != 0));
+    }
+
+    /**
+     * Identifies web content by checking the ancestors of {@code view} for elements which are
+     * WebView containers.
+     *
+     * @param view the {@link ViewHierarchyElement} to evaluate
+     * @return {@code true} if {@code WebView} was identified as an ancestor, {@code false}
+     *     otherwise
+     */
+    boolean hasWebViewAncestor(ViewHierarchyElement view) {
+      return (getState(view) & WEB_VIEW) != 0;
+    }
+
+    private int getState(ViewHierarchyElement view) {
+      byte[] states = getWindowStates(windowStates, view);
+      if (states[view.getId()] == 0) {
+        byte[] ownStates = getWindowStates(windowOwnStates, view);
+        // Collect the views up to the nearest ancestor whose state is known, then derive their
+        // states from the top down.
+        List<ViewHierarchyElement> path = new ArrayList<>();
+        for (@Nullable ViewHierarchyElement pathView = view;
+            (pathView != null) && (states[pathView.getId()] == 0);
+            pathView = pathView.getParentView()) {
+          path.add(pathView);
+        }
+        for (int i = path.size() - 1; i >= 0; i--) {
+          ViewHierarchyElement pathView = path.get(i);
+          @Nullable ViewHierarchyElement parent = pathView.getParentView();
+          states[pathView.getId()] =
+              (byte)
+                  ((parent == null)
+                      ? KNOWN
+                      : (states[parent.getId()] | getOwnState(parent, ownStates)));
+        }
+      }
+      return states[view.getId()];
+    }
+
+    /** Returns the array of states for the window of {@code view}, creating it if necessary. */
+    private static byte[] getWindowStates(
+        Map<Integer, byte[]> statesByWindow, ViewHierarchyElement view) {
+      byte @Nullable [] states = statesByWindow.get(view.getWindow().getId());
+      if (states == null) {
+        states = new byte[view.getWindow().getAllViews().size()];
+        statesByWindow.put(view.getWindow().getId(), states);
+      }
+      return states;
+    }
+
+    /**
+     * Returns the state that {@code ancestor} contributes to that of its descendants, determining
+     * it only if it is not already recorded in {@code ownStates}.
+     */
+    private int getOwnState(ViewHierarchyElement ancestor, byte[] ownStates) {
+      if (ownStates[ancestor.getId()] == 0) {
+        ownStates[ancestor.getId()] = (byte) computeOwnState(ancestor);
+      }
+      return ownStates[ancestor.getId()];
+    }
+
+    private int computeOwnState(ViewHierarchyElement ancestor) {
+      int state = KNOWN;
+      if (TRUE.equals(ancestor.hasTouchDelegate())) {
+        state |= TOUCH_DELEGATE;
+      }
+      boolean isClickable = TRUE.equals(ancestor.isClickable());
+      boolean isLongClickable = TRUE.equals(ancestor.isLongClickable());
+      if ((isClickable || isLongClickable) && meetsOwnMinimumSize(ancestor)) {
+        state |= (isClickable ? QUALIFYING_CLICKABLE : 0)
+            | (isLongClickable ? QUALIFYING_LONG_CLICKABLE : 0);
+      }
+      if (ancestor.checkInstanceOf(WEB_VIEW_CLASS_NAME)) {
+        state |= WEB_VIEW;
+      }
+      return state;
+    }
+
+    private boolean meetsOwnMinimumSize(ViewHierarchyElement ancestor) {
+      Point requiredSize = getMinimumAllowableSizeForView(ancestor, parameters);
+      Rect bounds = ancestor.getBoundsInScreen();
+      return !ancestor.checkInstanceOf(ABS_LIST_VIEW_CLASS_NAME)
+          && (bounds.getHeight() >= requiredSize.getY())
+          && (bounds.getWidth() >= requiredSize.getX());
+    }
+  }
 }
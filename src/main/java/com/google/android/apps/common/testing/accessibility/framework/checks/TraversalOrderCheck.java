@@ -20,17 +20,18 @@ import com.google.android.apps.common.testing.accessibility.framework.Accessibil
 import com.google.android.apps.common.testing.accessibility.framework.AccessibilityCheckResult.AccessibilityCheckResultType;
 import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheck;
 import com.google.android.apps.common.testing.accessibility.framework.AccessibilityHierarchyCheckResult;
+import com.google.android.apps.common.testing.accessibility.framework.HashMapResultMetadata;
 import com.google.android.apps.common.testing.accessibility.framework.Parameters;
 import com.google.android.apps.common.testing.accessibility.framework.ResultMetadata;
 import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
-import com.google.common.base.Joiner;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.WindowHierarchyElement;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** Check to detect problems in the developer specified accessibility traversal ordering. */
@@ -47,6 +48,13 @@ public class TraversalOrderCheck extends AccessibilityHierarchyCheck {
   /** Result when the view has conflicting accessibilityTraversalBefore/After constraints. */
   public static final int RESULT_ID_TRAVERSAL_OVER_CONSTRAINED = 5;
 
+  /**
+   * Result metadata key for the condensed unique ids of the views forming a cycle, as a {@code
+   * List<String>} of decimal numbers in traversal order. Populated in results with {@link
+   * #RESULT_ID_TRAVERSAL_BEFORE_CYCLE} and {@link #RESULT_ID_TRAVERSAL_AFTER_CYCLE}.
+   */
+  public static final String KEY_CYCLE_VIEW_IDS = "KEY_CYCLE_VIEW_IDS";
+
   @Override
   protected @Nullable String getHelpTopic() {
     return "7664232";
@@ -64,7 +72,27 @@ public class TraversalOrderCheck extends AccessibilityHierarchyCheck {
       @Nullable Parameters parameters) {
     List<AccessibilityHierarchyCheckResult> results = new ArrayList<>();
     List<? extends ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
-    for (ViewHierarchyElement view : viewsToEval) {
+    TraversalGraph graph = new TraversalGraph(hierarchy);
+
+    // Each cycle is reported once, on the first evaluated view which lies on the cycle or, if there
+    // is none, the first evaluated view whose chain leads into it. A view whose before chain leads
+    // into a cycle is not evaluated further, so it cannot report a cycle of after relations.
+    int[] beforeCycleReporters = newReporters(graph.before);
+    int[] afterCycleReporters = newReporters(graph.after);
+    for (int i = 0; i < viewsToEval.size(); i++) {
+      ViewHierarchyElement view = viewsToEval.get(i);
+      if (isEvaluated(view)) {
+        int index = graph.indexOf(view);
+        if (graph.before.cycles[index] != TraversalGraph.NONE) {
+          chooseReporter(beforeCycleReporters, graph.before, index, i, viewsToEval, graph);
+        } else if (graph.after.cycles[index] != TraversalGraph.NONE) {
+          chooseReporter(afterCycleReporters, graph.after, index, i, viewsToEval, graph);
+        }
+      }
+    }
+
+    for (int i = 0; i < viewsToEval.size(); i++) {
+      ViewHierarchyElement view = viewsToEval.get(i);
       if (!TRUE.equals(view.isVisibleToUser())) {
         results.add(new AccessibilityHierarchyCheckResult(
             this.getClass(),
@@ -87,37 +115,36 @@ public class TraversalOrderCheck extends AccessibilityHierarchyCheck {
 
       // See if view is involved in an accessibilityTraversalBefore cycle or an
       // accessibilityTraversalAfter cycle.
-      List<ViewHierarchyElement> beforeChain;
-      List<ViewHierarchyElement> afterChain;
-      try {
-        beforeChain = buildNodeChain(view, (el) -> el.getAccessibilityTraversalBefore());
-      } catch (CycleException e) {
-        results.add(
-            new AccessibilityHierarchyCheckResult(
-                this.getClass(),
-                AccessibilityCheckResultType.WARNING,
-                view,
-                RESULT_ID_TRAVERSAL_BEFORE_CYCLE,
-                null));
+      int index = graph.indexOf(view);
+      int beforeCycle = graph.before.cycles[index];
+      if (beforeCycle != TraversalGraph.NONE) {
+        if (beforeCycleReporters[beforeCycle] == i) {
+          results.add(
+              new AccessibilityHierarchyCheckResult(
+                  this.getClass(),
+                  AccessibilityCheckResultType.WARNING,
+                  view,
+                  RESULT_ID_TRAVERSAL_BEFORE_CYCLE,
+                  createCycleMetadata(graph, graph.before, beforeCycle)));
+        }
         continue;
       }
-      try {
-        afterChain = buildNodeChain(view, (el) -> el.getAccessibilityTraversalAfter());
-      } catch (CycleException e) {
-        results.add(
-            new AccessibilityHierarchyCheckResult(
-                this.getClass(),
-                AccessibilityCheckResultType.WARNING,
-                view,
-                RESULT_ID_TRAVERSAL_AFTER_CYCLE,
-                null));
+      int afterCycle = graph.after.cycles[index];
+      if (afterCycle != TraversalGraph.NONE) {
+        if (afterCycleReporters[afterCycle] == i) {
+          results.add(
+              new AccessibilityHierarchyCheckResult(
+                  this.getClass(),
+                  AccessibilityCheckResultType.WARNING,
+                  view,
+                  RESULT_ID_TRAVERSAL_AFTER_CYCLE,
+                  createCycleMetadata(graph, graph.after, afterCycle)));
+        }
         continue;
       }
 
       // See if view is involved in over constraint by before and after.
-      Set<ViewHierarchyElement> intersection = intersectionOf(beforeChain, afterChain);
-      intersection.remove(view);
-      if (!intersection.isEmpty()) {
+      if (graph.isOverConstrained(index)) {
         results.add(
             new AccessibilityHierarchyCheckResult(
                 this.getClass(),
@@ -178,53 +205,167 @@ public class TraversalOrderCheck extends AccessibilityHierarchyCheck {
     }
   }
 
+  private static boolean isEvaluated(ViewHierarchyElement view) {
+    return TRUE.equals(view.isVisibleToUser()) && view.isImportantForAccessibility();
+  }
+
+  private static int[] newReporters(Relation relation) {
+    int[] reporters = new int[relation.cycleMembers.size()];
+    Arrays.fill(reporters, TraversalGraph.NONE);
+    return reporters;
+  }
+
   /**
-   * Build a sequence of elements starting from {@code start} by repeatedly applying {@code
-   * nextElementFunction}.
-   *
-   * @throws CycleException if a loop is detected
+   * Records the view at {@code position} in {@code viewsToEval} as the one to report the cycle its
+   * chain leads into, unless an earlier view has been recorded which is at least as suitable.
    */
-  private static List<ViewHierarchyElement> buildNodeChain(
-      ViewHierarchyElement start, NextElementFunction nextElementFunction) throws CycleException {
-    List<ViewHierarchyElement> chain = new ArrayList<>();
-    chain.add(start);
-    ViewHierarchyElement ptr = start;
-    while (true) {
-      ptr = nextElementFunction.apply(ptr);
-      if (ptr == null) {
-        return chain;
-      }
-      if (chain.contains(ptr)) {
-        throw new CycleException(chain);
-      }
-      chain.add(ptr);
+  private static void chooseReporter(
+      int[] reporters,
+      Relation relation,
+      int index,
+      int position,
+      List<? extends ViewHierarchyElement> viewsToEval,
+      TraversalGraph graph) {
+    int cycle = relation.cycles[index];
+    int reporter = reporters[cycle];
+    if ((reporter == TraversalGraph.NONE)
+        || (relation.onCycle.get(index)
+            && !relation.onCycle.get(graph.indexOf(viewsToEval.get(reporter))))) {
+      reporters[cycle] = position;
     }
   }
 
-  /** Find the elements that two lists have in common. */
-  private static <T> Set<T> intersectionOf(List<T> list1, List<T> list2) {
-    Set<T> intersection = new HashSet<T>(list1);
-    intersection.retainAll(new HashSet<T>(list2));
-    return intersection;
+  private static ResultMetadata createCycleMetadata(
+      TraversalGraph graph, Relation relation, int cycle) {
+    List<String> ids = new ArrayList<>();
+    for (int member : relation.cycleMembers.get(cycle)) {
+      ids.add(Long.toString(graph.views.get(member).getCondensedUniqueId()));
+    }
+    ResultMetadata resultMetadata = new HashMapResultMetadata();
+    resultMetadata.putStringList(KEY_CYCLE_VIEW_IDS, ids);
+    return resultMetadata;
   }
 
-  private interface NextElementFunction {
-    @Nullable ViewHierarchyElement apply(ViewHierarchyElement el);
-  }
+  /**
+   * The accessibilityTraversalBefore and accessibilityTraversalAfter relations between the views
+   * of every window of a hierarchy, with the views numbered consecutively across windows.
+   */
+  private static final class TraversalGraph {
+
+    static final int NONE = -1;
+
+    final List<ViewHierarchyElement> views = new ArrayList<>();
+    final Relation before;
+    final Relation after;
 
-  private static class CycleException extends Exception {
+    /** The number of each window's first view. */
+    private final int[] windowOffsets;
 
-    CycleException(List<ViewHierarchyElement> elements) {
-      super(constructCycleMessage(elements));
+    /** Marks the views of one chain, for finding views common to two chains without a set. */
+    private final int[] stamps;
+
+    TraversalGraph(AccessibilityHierarchy hierarchy) {
+      windowOffsets = new int[hierarchy.getAllWindows().size()];
+      for (WindowHierarchyElement window : hierarchy.getAllWindows()) {
+        windowOffsets[window.getId()] = views.size();
+        views.addAll(window.getAllViews());
+      }
+      int[] beforeNext = new int[views.size()];
+      int[] afterNext = new int[views.size()];
+      for (int i = 0; i < views.size(); i++) {
+        beforeNext[i] = indexOf(views.get(i).getAccessibilityTraversalBefore());
+        afterNext[i] = indexOf(views.get(i).getAccessibilityTraversalAfter());
+      }
+      before = new Relation(beforeNext);
+      after = new Relation(afterNext);
+      stamps = new int[views.size()];
+    }
+
+    int indexOf(@Nullable ViewHierarchyElement view) {
+      return (view == null) ? NONE : (windowOffsets[view.getWindow().getId()] + view.getId());
     }
 
     /**
-     * Resulting message looks like:
-     *
-     * <p>[ViewHierarchyElement class=...]->[...]->[...]->[ViewHierarchyElement <same as first>]
+     * Returns {@code true} if a view other than the one at {@code index} follows it in both its
+     * before chain and its after chain, neither of which may lead into a cycle.
      */
-    private static String constructCycleMessage(List<ViewHierarchyElement> elements) {
-      return Joiner.on("->").join(elements);
+    boolean isOverConstrained(int index) {
+      int stamp = index + 1;
+      for (int i = before.next[index]; i != NONE; i = before.next[i]) {
+        stamps[i] = stamp;
+      }
+      for (int i = after.next[index]; i != NONE; i = after.next[i]) {
+        if (stamps[i] == stamp) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * One traversal relation, in which each view names at most one next view. Following the relation
+   * from a view gives a chain which either ends or leads into a single cycle, so every cycle, and
+   * the cycle reached from every view, is found in one pass which visits each view once. This is
+   * the special case of finding strongly connected components for graphs of this shape.
+   */
+  private static final class Relation {
+
+    /** The next view of each view, or {@link TraversalGraph#NONE}. */
+    final int[] next;
+
+    /** The cycle which the chain from each view leads into, or {@link TraversalGraph#NONE}. */
+    final int[] cycles;
+
+    /** The views which lie on a cycle. */
+    final BitSet onCycle;
+
+    /** The views of each cycle, in the order in which the relation visits them. */
+    final List<int[]> cycleMembers = new ArrayList<>();
+
+    Relation(int[] next) {
+      this.next = next;
+      int size = next.length;
+      cycles = new int[size];
+      onCycle = new BitSet(size);
+      BitSet done = new BitSet(size);
+      int[] path = new int[size];
+      int[] pathPositions = new int[size];
+      Arrays.fill(pathPositions, TraversalGraph.NONE);
+      for (int start = 0; start < size; start++) {
+        if (done.get(start)) {
+          continue;
+        }
+        // Follow the chain until it ends, reaches a view whose cycle is already known, or returns
+        // to a view on the current path, closing a new cycle.
+        int length = 0;
+        int view = start;
+        while ((view != TraversalGraph.NONE)
+            && !done.get(view)
+            && (pathPositions[view] == TraversalGraph.NONE)) {
+          pathPositions[view] = length;
+          path[length++] = view;
+          view = next[view];
+        }
+        int cycle;
+        if (view == TraversalGraph.NONE) {
+          cycle = TraversalGraph.NONE;
+        } else if (done.get(view)) {
+          cycle = cycles[view];
+        } else {
+          cycle = cycleMembers.size();
+          int[] members = Arrays.copyOfRange(path, pathPositions[view], length);
+          cycleMembers.add(members);
+          for (int member : members) {
+            onCycle.set(member);
+          }
+        }
+        for (int i = 0; i < length; i++) {
+          cycles[path[i]] = cycle;
+          pathPositions[path[i]] = TraversalGraph.NONE;
+          done.set(path[i]);
+        }
+      }
     }
   }
 }
@@ -19,7 +19,9 @@ import com.google.android.apps.common.testing.accessibility.framework.replacemen
 import com.google.android.apps.common.testing.accessibility.framework.replacements.TextUtils;
 import com.google.android.apps.common.testing.accessibility.framework.strings.StringManager;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.AccessibilityHierarchy;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewBoundsIndex;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewHierarchyElement;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.ViewTreeIndex;
 import com.google.android.apps.common.testing.accessibility.framework.uielement.WindowHierarchyElement;
 import com.google.common.annotations.Beta;
 import com.google.common.base.Ascii;
@@ -28,6 +30,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -213,6 +216,11 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
         preprocessOcrResults(hierarchy, fromRoot, parameters);
 
     List<? extends ViewHierarchyElement> viewsToEval = getElementsToEvaluate(fromRoot, hierarchy);
+    ViewsInScope viewsInScope =
+        (fromRoot != null)
+            ? ViewsInScope.ofSubtree(fromRoot)
+            : ViewsInScope.ofWindow(hierarchy.getActiveWindow());
+    boolean containsCharacterLocations = anyViewHasTextCharacterLocations(viewsToEval);
     Locale locale = hierarchy.getDeviceState().getLocale();
     for (ViewHierarchyElement view : viewsToEval) {
       results.addAll(
@@ -221,8 +229,8 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
               elementToTextListMap,
               parameters,
               locale,
-              viewsToEval,
-              anyViewHasTextCharacterLocations(viewsToEval)));
+              viewsInScope,
+              containsCharacterLocations));
     }
     return results;
   }
@@ -256,7 +264,7 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
 
     List<Rect> systemWindowBounds = getSystemWindowBounds(hierarchy);
     Rect activeWindowBounds = hierarchy.getActiveWindow().getBoundsInScreen();
-    List<? extends ViewHierarchyElement> allViews = hierarchy.getActiveWindow().getAllViews();
+    ViewsInScope allViews = ViewsInScope.ofWindow(hierarchy.getActiveWindow());
     ImmutableList<TextComponent> texts = checkNotNull(parameters.getOcrResult()).getTexts();
     for (TextComponent textComponent : texts) {
       if (!activeWindowBounds.contains(textComponent.getBoundsInScreen())) {
@@ -298,7 +306,7 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
       Map<ViewHierarchyElement, List<TextComponent>> elementToTextListMap,
       @Nullable Parameters parameters,
       Locale locale,
-      List<? extends ViewHierarchyElement> viewsToEval,
+      ViewsInScope viewsToEval,
       boolean containsCharacterLocations) {
     if ((parameters == null) || (parameters.getOcrResult() == null)) {
       return ImmutableList.of(createNotRunCheckResult(view, RESULT_ID_OCR_RESULT_NOT_AVAILABLE));
@@ -384,7 +392,7 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
         // accessibility
         ViewHierarchyElement bestMatchViewIncludeNotImportantViews =
             findBestMatchView(
-                text, view.getSelfAndAllDescendants(), /* includeNotImportantViews= */ true);
+                text, ViewsInScope.ofSubtree(view), /* includeNotImportantViews= */ true);
         if ((bestMatchViewIncludeNotImportantViews != null)
             && bestMatchViewIncludeNotImportantViews.checkInstanceOf(IMAGE_VIEW_CLASS_NAME)) {
           builder.add(
@@ -648,7 +656,7 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
    */
   @SuppressWarnings("ReferenceEquality")
   private static Map<TextComponent, ViewHierarchyElement> buildBestMatchMap(
-      TextComponent textComponent, List<? extends ViewHierarchyElement> allViews) {
+      TextComponent textComponent, ViewsInScope allViews) {
     Map<TextComponent, ViewHierarchyElement> map = new HashMap<>();
 
     List<TextComponent> wordList = flattenTextComponent(textComponent);
@@ -772,12 +780,14 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
    * If includeNotImportantViews is false, returns the view that has the best match from among only
    * those views which are important for accessibility and focusable.
    *
+   * <p>Only views whose bounds intersect those of the text can have a positive intersection over
+   * union, so the others are not considered at all. The views considered are visited in the same
+   * order as in allViews, so ties are broken in the same way.
+   *
    * @return {@code null} if the region of the text does not intersect with any qualified view.
    */
   private static @Nullable ViewHierarchyElement findBestMatchView(
-      TextComponent textComponent,
-      List<? extends ViewHierarchyElement> allViews,
-      boolean includeNotImportantViews) {
+      TextComponent textComponent, ViewsInScope allViews, boolean includeNotImportantViews) {
     // If there are elements with text that overlap with textComponent, it is highly likely one of
     // those is the best match view, regardless of exact IOU scores. If so, only iterate through the
     // overlapping views. If no views have text overlapping textComponent, iterate over all views.
@@ -795,11 +805,9 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
     //   2 or more overlapping views: views found, but they might not be important for
     //       accessibility. It would be ambiguous to traverse the tree for all those views'
     //       ancestors. Instead, search all views.
-    List<? extends ViewHierarchyElement> viewsWithOverlappingCharacters =
+    List<ViewHierarchyElement> viewsWithOverlappingCharacters =
         filterViewsByOverlappingCharacterLocations(textComponent, allViews);
-    if (includeNotImportantViews && !viewsWithOverlappingCharacters.isEmpty()) {
-      allViews = viewsWithOverlappingCharacters;
-    } else if (!includeNotImportantViews && viewsWithOverlappingCharacters.size() == 1) {
+    if (!includeNotImportantViews && viewsWithOverlappingCharacters.size() == 1) {
       ViewHierarchyElement focusableForAccessibilityAncestor =
           ViewHierarchyElementUtils.getFocusableForAccessibilityAncestor(
               viewsWithOverlappingCharacters.get(0));
@@ -808,10 +816,14 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
         return focusableForAccessibilityAncestor;
       }
     }
+    List<ViewHierarchyElement> candidateViews =
+        (includeNotImportantViews && !viewsWithOverlappingCharacters.isEmpty())
+            ? viewsWithOverlappingCharacters
+            : allViews.intersecting(textComponent.getBoundsInScreen());
 
     ViewHierarchyElement bestMatch = null;
     float highestIou = 0;
-    for (ViewHierarchyElement view : allViews) {
+    for (ViewHierarchyElement view : candidateViews) {
       if (!includeNotImportantViews) {
         if (!view.isImportantForAccessibility() || !shouldFocusView(view)) {
           continue;
@@ -835,17 +847,8 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
    *     of {@code textComponent}. Views without text character locations are not returned.
    */
   private static List<ViewHierarchyElement> filterViewsByOverlappingCharacterLocations(
-      TextComponent textComponent, List<? extends ViewHierarchyElement> allViews) {
-    List<ViewHierarchyElement> results = new ArrayList<>();
-    for (ViewHierarchyElement view : allViews) {
-      for (Rect charBounds : view.getTextCharacterLocations()) {
-        if (Rect.intersects(textComponent.getBoundsInScreen(), charBounds)) {
-          results.add(view);
-          break;
-        }
-      }
-    }
-    return results;
+      TextComponent textComponent, ViewsInScope allViews) {
+    return allViews.withCharacterLocationsIntersecting(textComponent.getBoundsInScreen());
   }
 
   /**
@@ -914,4 +917,62 @@ public class UnexposedTextCheck extends AccessibilityHierarchyCheck {
     }
     return costs[s2.length()];
   }
+
+  /**
+   * The views among which OCR text is matched: either all views of a window, in order of their
+   * ids, or the views of one subtree, in depth-first pre-order. The views near a region are found
+   * by a query of the window's {@link ViewBoundsIndex} rather than by testing every view, and are
+   * returned in the same order as the views they are drawn from.
+   */
+  private static final class ViewsInScope {
+    private final WindowHierarchyElement window;
+    private final @Nullable ViewHierarchyElement root;
+
+    private ViewsInScope(WindowHierarchyElement window, @Nullable ViewHierarchyElement root) {
+      this.window = window;
+      this.root = root;
+    }
+
+    /** The views of {@link WindowHierarchyElement#getAllViews()}. */
+    static ViewsInScope ofWindow(WindowHierarchyElement window) {
+      return new ViewsInScope(window, null);
+    }
+
+    /** The views of {@link ViewHierarchyElement#getSelfAndAllDescendants()}. */
+    static ViewsInScope ofSubtree(ViewHierarchyElement root) {
+      return new ViewsInScope(root.getWindow(), root);
+    }
+
+    /** Returns the views whose bounds in screen intersect a region. */
+    List<ViewHierarchyElement> intersecting(Rect region) {
+      return inScope(window.getViewBoundsIndex().query(region));
+    }
+
+    /** Returns the views with a text character location which intersects a region. */
+    List<ViewHierarchyElement> withCharacterLocationsIntersecting(Rect region) {
+      return inScope(window.getViewBoundsIndex().queryCharacterLocations(region));
+    }
+
+    /** Restricts views of the window, in order of their ids, to those in scope, in scope order. */
+    private List<ViewHierarchyElement> inScope(List<ViewHierarchyElement> views) {
+      if (root == null) {
+        return views;
+      }
+      ViewHierarchyElement subtreeRoot = root;
+      ViewTreeIndex treeIndex = window.getViewTreeIndex();
+      List<ViewHierarchyElement> result = new ArrayList<>();
+      for (ViewHierarchyElement view : views) {
+        if (view.isSelfOrDescendantOf(subtreeRoot)) {
+          result.add(view);
+        }
+      }
+      Collections.sort(
+          result,
+          (first, second) ->
+              Integer.compare(
+                  treeIndex.getPreorderIndex(first.getId()),
+                  treeIndex.getPreorderIndex(second.getId())));
+      return result;
+    }
+  }
 }
@@ -0,0 +1,251 @@
+package com.google.android.apps.common.testing.accessibility.framework.checks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Finds which of a fixed list of words occur in a text as whole words, ignoring case, in a single
+ * pass over the text however many words there are. The words are compiled into an Aho-Corasick
+ * automaton when the matcher is created.
+ *
+ * <p>A word occurs as a whole word where it is matched literally and there is a word boundary, as
+ * matched by {@code \b} in a regular expression, at each end. A word boundary lies between a word
+ * character and a character which is not, or the start or end of the text, where word characters
+ * are letters, digits, marks and {@code '_'}.
+ *
+ * <p>Case is folded one {@code char} at a time, in any script, as by a regular expression with
+ * {@link java.util.regex.Pattern#CASE_INSENSITIVE} and {@link
+ * java.util.regex.Pattern#UNICODE_CASE}, which is how such expressions always behave on Android.
+ *
+ * <p>Instances are immutable.
+ */
+final class WordMatcher {
+
+  private static final int ROOT = 0;
+  private static final int NO_STATE = -1;
+
+  private final int[] wordLengths;
+
+  /** The characters which lead from each state to a child state, in ascending order. */
+  private final char[][] childCharacters;
+
+  /** The child state reached by each of {@link #childCharacters}, in the same order. */
+  private final int[][] childStates;
+
+  /** The state for the longest proper suffix of each state which is also a state. */
+  private final int[] failures;
+
+  /** The indices of the words which end at each state, including those of its suffixes. */
+  private final int[][] outputs;
+
+  /** The indices of any empty words, which occur wherever there is a word boundary. */
+  private final int[] emptyWords;
+
+  /** The index of the word spelled out by each state, or {@link #NO_STATE} if none. */
+  private final int[] wordAtState;
+
+  /**
+   * Compiles a list of words. Words may be repeated, in which case each occurrence is reported.
+   *
+   * @param words the words to find
+   */
+  WordMatcher(List<String> words) {
+    wordLengths = new int[words.size()];
+    List<List<Integer>> stateWords = new ArrayList<>();
+    stateWords.add(new ArrayList<>());
+    List<char[]> characterList = new ArrayList<>();
+    characterList.add(new char[0]);
+    List<int[]> stateList = new ArrayList<>();
+    stateList.add(new int[0]);
+    List<Integer> emptyWordList = new ArrayList<>();
+    for (int i = 0; i < words.size(); i++) {
+      String word = words.get(i);
+      wordLengths[i] = word.length();
+      if (word.isEmpty()) {
+        emptyWordList.add(i);
+        continue;
+      }
+      int state = ROOT;
+      for (int j = 0; j < word.length(); j++) {
+        char c = fold(word.charAt(j));
+        char[] characters = characterList.get(state);
+        int position = Arrays.binarySearch(characters, c);
+        if (position >= 0) {
+          state = stateList.get(state)[position];
+          continue;
+        }
+        position = -(position + 1);
+        int next = stateWords.size();
+        stateWords.add(new ArrayList<>());
+        characterList.add(new char[0]);
+        stateList.add(new int[0]);
+        characterList.set(state, insert(characters, position, c));
+        stateList.set(state, insert(stateList.get(state), position, next));
+        state = next;
+      }
+      stateWords.get(state).add(i);
+    }
+
+    int stateCount = stateWords.size();
+    childCharacters = characterList.toArray(new char[0][]);
+    childStates = stateList.toArray(new int[0][]);
+    wordAtState = new int[stateCount];
+    Arrays.fill(wordAtState, NO_STATE);
+    for (int state = 0; state < stateCount; state++) {
+      if (!stateWords.get(state).isEmpty()) {
+        wordAtState[state] = stateWords.get(state).get(0);
+      }
+    }
+
+    // Find the failure link of each state in breadth-first order, so that the links of shorter
+    // states are known first, and gather the words of each state's suffixes into its outputs.
+    failures = new int[stateCount];
+    outputs = new int[stateCount][];
+    outputs[ROOT] = new int[0];
+    int[] queue = new int[stateCount];
+    int queueEnd = 1;
+    for (int queueStart = 0; queueStart < queueEnd; queueStart++) {
+      int state = queue[queueStart];
+      for (int i = 0; i < childStates[state].length; i++) {
+        int child = childStates[state][i];
+        char c = childCharacters[state][i];
+        failures[child] = (state == ROOT) ? ROOT : step(failures[state], c);
+        List<Integer> childWords = stateWords.get(child);
+        int[] inherited = outputs[failures[child]];
+        int[] childOutputs = new int[childWords.size() + inherited.length];
+        for (int j = 0; j < childWords.size(); j++) {
+          childOutputs[j] = childWords.get(j);
+        }
+        System.arraycopy(inherited, 0, childOutputs, childWords.size(), inherited.length);
+        outputs[child] = childOutputs;
+        queue[queueEnd++] = child;
+      }
+    }
+
+    emptyWords = new int[emptyWordList.size()];
+    for (int i = 0; i < emptyWords.length; i++) {
+      emptyWords[i] = emptyWordList.get(i);
+    }
+  }
+
+  /**
+   * Finds the words which occur in a text as whole words.
+   *
+   * @return the indices of the words found, in the list from which this matcher was compiled
+   */
+  BitSet findWords(CharSequence text) {
+    BitSet found = new BitSet(wordLengths.length);
+    if ((emptyWords.length > 0) && hasBoundary(text)) {
+      for (int word : emptyWords) {
+        found.set(word);
+      }
+    }
+    int state = ROOT;
+    for (int i = 0; i < text.length(); i++) {
+      state = step(state, fold(text.charAt(i)));
+      for (int word : outputs[state]) {
+        int end = i + 1;
+        if (!found.get(word)
+            && isBoundary(text, end - wordLengths[word])
+            && isBoundary(text, end)) {
+          found.set(word);
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Determines whether a part of a text is exactly one of the words, ignoring case.
+   *
+   * @param text the text
+   * @param start the start of the part, inclusive
+   * @param end the end of the part, exclusive
+   */
+  boolean isWord(CharSequence text, int start, int end) {
+    if (start == end) {
+      return emptyWords.length > 0;
+    }
+    int state = ROOT;
+    for (int i = start; i < end; i++) {
+      state = getChild(state, fold(text.charAt(i)));
+      if (state == NO_STATE) {
+        return false;
+      }
+    }
+    return wordAtState[state] != NO_STATE;
+  }
+
+  /** Returns the state reached from {@code state} by {@code c}, following failure links. */
+  private int step(int state, char c) {
+    while (true) {
+      int next = getChild(state, c);
+      if (next != NO_STATE) {
+        return next;
+      }
+      if (state == ROOT) {
+        return ROOT;
+      }
+      state = failures[state];
+    }
+  }
+
+  /** Returns the child state reached from {@code state} by {@code c}, or {@link #NO_STATE}. */
+  private int getChild(int state, char c) {
+    int position = Arrays.binarySearch(childCharacters[state], c);
+    return (position < 0) ? NO_STATE : childStates[state][position];
+  }
+
+  private static char[] insert(char[] array, int position, char value) {
+    char[] result = new char[array.length + 1];
+    System.arraycopy(array, 0, result, 0, position);
+    result[position] = value;
+    System.arraycopy(array, position, result, position + 1, array.length - position);
+    return result;
+  }
+
+  private static int[] insert(int[] array, int position, int value) {
+    int[] result = new int[array.length + 1];
+    System.arraycopy(array, 0, result, 0, position);
+    result[position] = value;
+    System.arraycopy(array, position, result, position + 1, array.length - position);
+    return result;
+  }
+
+  /**
+   * Folds the case of a character. The folded character is a single {@code char}, so a word and
+   * its folded form have the same length.
+   */
+  private static char fold(char c) {
+    return Character.toLowerCase(Character.toUpperCase(c));
+  }
+
+  private static boolean hasBoundary(CharSequence text) {
+    for (int i = 0; i <= text.length(); i++) {
+      if (isBoundary(text, i)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isBoundary(CharSequence text, int index) {
+    boolean wordBefore =
+        (index > 0) && isWordCharacter(Character.codePointBefore(text, index));
+    boolean wordAfter =
+        (index < text.length()) && isWordCharacter(Character.codePointAt(text, index));
+    return wordBefore != wordAfter;
+  }
+
+  private static boolean isWordCharacter(int codePoint) {
+    if (Character.isLetterOrDigit(codePoint) || (codePoint == '_')) {
+      return true;
+    }
+    int type = Character.getType(codePoint);
+    return (type == Character.NON_SPACING_MARK)
+        || (type == Character.ENCLOSING_MARK)
+        || (type == Character.COMBINING_SPACING_MARK);
+  }
+}
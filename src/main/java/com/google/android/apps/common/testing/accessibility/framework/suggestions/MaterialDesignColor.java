@@ -412,6 +412,34 @@ public enum MaterialDesignColor {
     }
   }
 
+  /** Every palette color, in the iteration order of {@link #values()} and each color map. */
+  private static final int[] PALETTE_COLORS;
+
+  /** The {@link MaterialDesignColor} of each entry in {@link #PALETTE_COLORS}. */
+  private static final MaterialDesignColor[] PALETTE_DESIGN_COLORS;
+
+  /** CIE-L*ab values of each entry in {@link #PALETTE_COLORS}, packed as L*, a*, b* triples. */
+  private static final double[] PALETTE_LAB;
+
+  static {
+    int paletteSize = 0;
+    for (MaterialDesignColor designColor : values()) {
+      paletteSize += designColor.colorMap.size();
+    }
+    PALETTE_COLORS = new int[paletteSize];
+    PALETTE_DESIGN_COLORS = new MaterialDesignColor[paletteSize];
+    PALETTE_LAB = new double[paletteSize * ContrastUtils.LAB_COMPONENT_COUNT];
+    int index = 0;
+    for (MaterialDesignColor designColor : values()) {
+      for (int color : designColor.colorMap.values()) {
+        PALETTE_COLORS[index] = color;
+        PALETTE_DESIGN_COLORS[index] = designColor;
+        ContrastUtils.rgb2lab(color, PALETTE_LAB, index * ContrastUtils.LAB_COMPONENT_COUNT);
+        index++;
+      }
+    }
+  }
+
   private final String name;
   private final ImmutableBiMap<Shade, Integer> colorMap;
 
@@ -453,17 +481,43 @@ public enum MaterialDesignColor {
       return materialDesignColor;
     }
 
+    double[] lab = ContrastUtils.rgb2lab(color);
     double minColorDistance = Double.MAX_VALUE;
     MaterialDesignColor closestColor = null;
-    for (MaterialDesignColor designColor : MaterialDesignColor.values()) {
-      for (int testColor : designColor.getColorMap().values()) {
-        double colorDistance = ContrastUtils.colorDifference(testColor, color);
-        if (minColorDistance > colorDistance) {
-          minColorDistance = colorDistance;
-          closestColor = designColor;
-        }
+    for (int i = 0; i < getPaletteSize(); i++) {
+      double colorDistance = getPaletteColorDifference(i, lab);
+      if (minColorDistance > colorDistance) {
+        minColorDistance = colorDistance;
+        closestColor = PALETTE_DESIGN_COLORS[i];
       }
     }
     return checkNotNull(closestColor);
   }
+
+  /** Returns the total number of colors across all {@link MaterialDesignColor}s. */
+  static int getPaletteSize() {
+    return PALETTE_COLORS.length;
+  }
+
+  /**
+   * Returns a palette color. Palette colors are ordered as {@link #values()}, then by the iteration
+   * order of each {@link #getColorMap()}.
+   *
+   * @param index the index of the color, from 0 to {@link #getPaletteSize()} (exclusive)
+   */
+  static int getPaletteColor(int index) {
+    return PALETTE_COLORS[index];
+  }
+
+  /**
+   * Returns the perceived color difference between a palette color and a color already converted
+   * to CIE-L*ab, as {@link ContrastUtils#colorDifference(int, int)} with the palette color first.
+   *
+   * @param index the index of the palette color, as in {@link #getPaletteColor(int)}
+   * @param lab the L*, a* and b* values of the other color
+   */
+  static double getPaletteColorDifference(int index, double[] lab) {
+    return ContrastUtils.colorDifference(
+        PALETTE_LAB, index * ContrastUtils.LAB_COMPONENT_COUNT, lab, 0);
+  }
 }
@@ -49,17 +49,20 @@ class TextBackgroundColorFixSuggestionProducer extends BaseTextContrastFixSugges
       int textColor, int backgroundColor, double requiredContrastRatio) {
     Integer bestColorCandidate = null;
     double minColorDistance = Double.MAX_VALUE;
-    for (MaterialDesignColor designColor : MaterialDesignColor.values()) {
-      for (int testColor : designColor.getColorMap().values()) {
-        if (ContrastUtils.calculateContrastRatio(textColor, testColor) < requiredContrastRatio) {
-          continue;
-        }
+    double textLuminance = ContrastUtils.calculateLuminance(textColor);
+    double[] backgroundLab = ContrastUtils.rgb2lab(backgroundColor);
+    for (int i = 0; i < MaterialDesignColor.getPaletteSize(); i++) {
+      int testColor = MaterialDesignColor.getPaletteColor(i);
+      if (ContrastUtils.calculateContrastRatio(
+              textLuminance, ContrastUtils.calculateLuminance(testColor))
+          < requiredContrastRatio) {
+        continue;
+      }
 
-        double colorDistance = ContrastUtils.colorDifference(testColor, backgroundColor);
-        if (minColorDistance > colorDistance) {
-          minColorDistance = colorDistance;
-          bestColorCandidate = testColor;
-        }
+      double colorDistance = MaterialDesignColor.getPaletteColorDifference(i, backgroundLab);
+      if (minColorDistance > colorDistance) {
+        minColorDistance = colorDistance;
+        bestColorCandidate = testColor;
       }
     }
     return bestColorCandidate;
@@ -62,18 +62,20 @@ class TextColorFixSuggestionProducer extends BaseTextContrastFixSuggestionProduc
     // the closest color to the culprit View's text color.
     double minColorDistance = Double.MAX_VALUE;
     Integer bestColorCandidate = null;
-    for (MaterialDesignColor designColor : MaterialDesignColor.values()) {
-      for (int testColor : designColor.getColorMap().values()) {
-        if (ContrastUtils.calculateContrastRatio(testColor, backgroundColor)
-            < requiredContrastRatio) {
-          continue;
-        }
+    double backgroundLuminance = ContrastUtils.calculateLuminance(backgroundColor);
+    double[] textLab = ContrastUtils.rgb2lab(textColor);
+    for (int i = 0; i < MaterialDesignColor.getPaletteSize(); i++) {
+      int testColor = MaterialDesignColor.getPaletteColor(i);
+      if (ContrastUtils.calculateContrastRatio(
+              ContrastUtils.calculateLuminance(testColor), backgroundLuminance)
+          < requiredContrastRatio) {
+        continue;
+      }
 
-        double colorDistance = ContrastUtils.colorDifference(testColor, textColor);
-        if (minColorDistance > colorDistance) {
-          minColorDistance = colorDistance;
-          bestColorCandidate = testColor;
-        }
+      double colorDistance = MaterialDesignColor.getPaletteColorDifference(i, textLab);
+      if (minColorDistance > colorDistance) {
+        minColorDistance = colorDistance;
+        bestColorCandidate = testColor;
       }
     }
     return bestColorCandidate;
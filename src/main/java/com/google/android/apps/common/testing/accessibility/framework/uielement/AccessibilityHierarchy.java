@@ -50,6 +50,9 @@ public class AccessibilityHierarchy {
   /* A nested class that stores all unique view element class names. */
   protected final ViewElementClassNames viewElementClassNames;
 
+  /* Attributes derived from the views, computed on first use and shared by all checks. */
+  private final DerivedAttributes derivedAttributes = new DerivedAttributes();
+
   protected AccessibilityHierarchy(
       DeviceState deviceState,
       AccessibilityHierarchyOrigin origin,
@@ -122,6 +125,31 @@ public class AccessibilityHierarchy {
     return getWindowById(windowId).getViewById(viewId);
   }
 
+  /**
+   * Returns a 64-bit fingerprint of the content of this hierarchy, folding in the content hash of
+   * every window and the identity of the active window. Hierarchies with different content hashes
+   * differ in content, so this may be used as a cache key for the results of evaluating a screen.
+   *
+   * @see ViewHierarchyElement#getContentHash()
+   */
+  public long getContentHash() {
+    long hash = ContentHashing.SEED;
+    hash = ContentHashing.mix(hash, getActiveWindow().getId());
+    for (WindowHierarchyElement window : windowHierarchyElements) {
+      hash = ContentHashing.mix(hash, window.getContentHash());
+    }
+    return ContentHashing.finish(hash);
+  }
+
+  /**
+   * Returns the memo of attributes derived from the views of this hierarchy. Checks which derive
+   * the same attributes, such as the speakable text of a view, share them through this memo
+   * rather than each computing them again.
+   */
+  public DerivedAttributes getDerivedAttributes() {
+    return derivedAttributes;
+  }
+
   /** Returns a protocol buffer representation of this hierarchy. */
   public AccessibilityHierarchyProto toProto() {
     AccessibilityHierarchyProto.Builder builder = AccessibilityHierarchyProto.newBuilder();
@@ -0,0 +1,375 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.android.apps.common.testing.accessibility.framework.ClusteringUtils;
+import com.google.android.apps.common.testing.accessibility.framework.replacements.TextUtils;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The differences between two snapshots of a screen, found by matching each view of the previous
+ * {@link AccessibilityHierarchy} with at most one view of the current one.
+ *
+ * <p>Windows are matched by id, provided they have the same type. Within a pair of matched windows,
+ * views are matched in three passes, each considering only the views left unmatched by the passes
+ * before it:
+ *
+ * <ol>
+ *   <li>by {@link ViewHierarchyElement#getResourceName() resource name};
+ *   <li>by pseudo resource id with indices, as produced by {@link
+ *       ClusteringUtils#getPseudoResourceId}, which locates a view without a resource name relative
+ *       to its nearest ancestor with one;
+ *   <li>by structural position: the child at a given index of a matched parent, or the root at a
+ *       given index, is matched with the corresponding view if both have the same class name.
+ * </ol>
+ *
+ * <p>When several views share a key, they are matched in depth-first pre-order, so the first view
+ * with a key in the previous window is matched with the first view with that key in the current
+ * window. Each pass is a single walk over both windows, so a diff is computed in time roughly
+ * linear in the number of views.
+ *
+ * <p>A matched view is reported as changed if any property which describes the view itself, such
+ * as its text, bounds or state, differs. Changes to the children of a view are reported as the
+ * addition or removal of those children, and changes to references between views, such as {@link
+ * ViewHierarchyElement#getLabeledBy()}, are not reported.
+ *
+ * <p>Instances are immutable.
+ */
+public final class AccessibilityHierarchyDiff {
+
+  private static final int UNMATCHED = -1;
+
+  private final AccessibilityHierarchy previous;
+  private final AccessibilityHierarchy current;
+  private final ImmutableList<ViewHierarchyElement> addedElements;
+  private final ImmutableList<ViewHierarchyElement> removedElements;
+  private final ImmutableList<ViewHierarchyElement> changedElements;
+  private final boolean deviceStateChanged;
+
+  /**
+   * For each window of {@link #current}, the id of the matched view of the previous window for
+   * each view, or {@code null} if the window is unmatched.
+   */
+  private final int[] @Nullable [] previousIds;
+
+  /**
+   * For each window of {@link #previous}, the id of the matched view of the current window for
+   * each view, or {@code null} if the window is unmatched.
+   */
+  private final int[] @Nullable [] currentIds;
+
+  private AccessibilityHierarchyDiff(
+      AccessibilityHierarchy previous, AccessibilityHierarchy current) {
+    this.previous = previous;
+    this.current = current;
+    int previousWindowCount = previous.getAllWindows().size();
+    int currentWindowCount = current.getAllWindows().size();
+    previousIds = new int[currentWindowCount][];
+    currentIds = new int[previousWindowCount][];
+
+    ImmutableList.Builder<ViewHierarchyElement> added = ImmutableList.builder();
+    ImmutableList.Builder<ViewHierarchyElement> removed = ImmutableList.builder();
+    ImmutableList.Builder<ViewHierarchyElement> changed = ImmutableList.builder();
+    for (WindowHierarchyElement currentWindow : current.getAllWindows()) {
+      int windowId = currentWindow.getId();
+      if ((windowId >= previousWindowCount)
+          || !Objects.equals(
+              previous.getWindowById(windowId).getType(), currentWindow.getType())) {
+        addAllInPreorder(currentWindow, added);
+        continue;
+      }
+      WindowHierarchyElement previousWindow = previous.getWindowById(windowId);
+      WindowMatcher matcher = new WindowMatcher(previousWindow, currentWindow);
+      matcher.match();
+      previousIds[windowId] = matcher.previousIds;
+      currentIds[windowId] = matcher.currentIds;
+      matcher.report(added, removed, changed);
+    }
+    for (WindowHierarchyElement previousWindow : previous.getAllWindows()) {
+      if (currentIds[previousWindow.getId()] == null) {
+        addAllInPreorder(previousWindow, removed);
+      }
+    }
+    addedElements = added.build();
+    removedElements = removed.build();
+    changedElements = changed.build();
+    deviceStateChanged =
+        !previous.getDeviceState().toProto().equals(current.getDeviceState().toProto());
+  }
+
+  /**
+   * Computes the differences between two snapshots of a screen.
+   *
+   * @param previous the earlier snapshot
+   * @param current the later snapshot
+   */
+  public static AccessibilityHierarchyDiff compute(
+      AccessibilityHierarchy previous, AccessibilityHierarchy current) {
+    return new AccessibilityHierarchyDiff(previous, current);
+  }
+
+  /** Returns the earlier snapshot. */
+  public AccessibilityHierarchy getPrevious() {
+    return previous;
+  }
+
+  /** Returns the later snapshot. */
+  public AccessibilityHierarchy getCurrent() {
+    return current;
+  }
+
+  /**
+   * Returns the views of the current snapshot which have no match in the previous one, window by
+   * window in depth-first pre-order.
+   */
+  public ImmutableList<ViewHierarchyElement> getAddedElements() {
+    return addedElements;
+  }
+
+  /**
+   * Returns the views of the previous snapshot which have no match in the current one, window by
+   * window in depth-first pre-order.
+   */
+  public ImmutableList<ViewHierarchyElement> getRemovedElements() {
+    return removedElements;
+  }
+
+  /**
+   * Returns the views of the current snapshot whose properties differ from those of their match in
+   * the previous one, window by window in depth-first pre-order.
+   */
+  public ImmutableList<ViewHierarchyElement> getChangedElements() {
+    return changedElements;
+  }
+
+  /**
+   * Returns {@code true} if the {@link DeviceState}, such as the display metrics or locale, differs
+   * between the snapshots. Such changes are not reflected in the changed views.
+   */
+  public boolean isDeviceStateChanged() {
+    return deviceStateChanged;
+  }
+
+  /** Returns {@code true} if no view was added, removed or changed. */
+  public boolean isEmpty() {
+    return addedElements.isEmpty() && removedElements.isEmpty() && changedElements.isEmpty();
+  }
+
+  /**
+   * Returns the view of the previous snapshot matched with a view of the current one.
+   *
+   * @param currentElement a view of {@link #getCurrent()}
+   * @return the matched view, or {@code null} if {@code currentElement} was added
+   */
+  public @Nullable ViewHierarchyElement getPreviousElement(ViewHierarchyElement currentElement) {
+    WindowHierarchyElement window = currentElement.getWindow();
+    checkArgument(
+        window.getAccessibilityHierarchy() == current, "Element is not in the current hierarchy");
+    int @Nullable [] ids = previousIds[window.getId()];
+    if ((ids == null) || (ids[currentElement.getId()] == UNMATCHED)) {
+      return null;
+    }
+    return previous.getWindowById(window.getId()).getViewById(ids[currentElement.getId()]);
+  }
+
+  /**
+   * Returns the view of the current snapshot matched with a view of the previous one.
+   *
+   * @param previousElement a view of {@link #getPrevious()}
+   * @return the matched view, or {@code null} if {@code previousElement} was removed
+   */
+  public @Nullable ViewHierarchyElement getCurrentElement(ViewHierarchyElement previousElement) {
+    WindowHierarchyElement window = previousElement.getWindow();
+    checkArgument(
+        window.getAccessibilityHierarchy() == previous, "Element is not in the previous hierarchy");
+    int @Nullable [] ids = currentIds[window.getId()];
+    if ((ids == null) || (ids[previousElement.getId()] == UNMATCHED)) {
+      return null;
+    }
+    return current.getWindowById(window.getId()).getViewById(ids[previousElement.getId()]);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "{AccessibilityHierarchyDiff added=%d removed=%d changed=%d}",
+        addedElements.size(), removedElements.size(), changedElements.size());
+  }
+
+  private static void addAllInPreorder(
+      WindowHierarchyElement window, ImmutableList.Builder<ViewHierarchyElement> elements) {
+    ViewTreeIndex treeIndex = window.getViewTreeIndex();
+    for (int i = 0; i < treeIndex.size(); i++) {
+      elements.add(window.getViewById(treeIndex.getIdAtPreorderIndex(i)));
+    }
+  }
+
+  /** Matches the views of a pair of windows with the same id. */
+  private static final class WindowMatcher {
+
+    private final WindowHierarchyElement previousWindow;
+    private final WindowHierarchyElement currentWindow;
+    private final List<? extends ViewHierarchyElement> previousViews;
+    private final List<? extends ViewHierarchyElement> currentViews;
+    private final ViewTreeIndex previousTree;
+    private final ViewTreeIndex currentTree;
+
+    /** The id of the matched previous view for each current view. */
+    final int[] previousIds;
+
+    /** The id of the matched current view for each previous view. */
+    final int[] currentIds;
+
+    WindowMatcher(WindowHierarchyElement previousWindow, WindowHierarchyElement currentWindow) {
+      this.previousWindow = previousWindow;
+      this.currentWindow = currentWindow;
+      previousViews = previousWindow.getAllViews();
+      currentViews = currentWindow.getAllViews();
+      previousTree = previousWindow.getViewTreeIndex();
+      currentTree = currentWindow.getViewTreeIndex();
+      previousIds = new int[currentViews.size()];
+      currentIds = new int[previousViews.size()];
+      Arrays.fill(previousIds, UNMATCHED);
+      Arrays.fill(currentIds, UNMATCHED);
+    }
+
+    void match() {
+      matchByKey(getResourceNames(previousViews), getResourceNames(currentViews));
+      matchByKey(
+          ClusteringUtils.getPseudoResourceIds(previousWindow, /* includeIndices= */ true),
+          ClusteringUtils.getPseudoResourceIds(currentWindow, /* includeIndices= */ true));
+      matchByPosition();
+    }
+
+    /** Reports the unmatched and changed views of both windows. */
+    void report(
+        ImmutableList.Builder<ViewHierarchyElement> added,
+        ImmutableList.Builder<ViewHierarchyElement> removed,
+        ImmutableList.Builder<ViewHierarchyElement> changed) {
+      for (int i = 0; i < currentTree.size(); i++) {
+        int id = currentTree.getIdAtPreorderIndex(i);
+        ViewHierarchyElement view = currentViews.get(id);
+        if (previousIds[id] == UNMATCHED) {
+          added.add(view);
+        } else if (!view.attributesEqual(previousViews.get(previousIds[id]))) {
+          changed.add(view);
+        }
+      }
+      for (int i = 0; i < previousTree.size(); i++) {
+        int id = previousTree.getIdAtPreorderIndex(i);
+        if (currentIds[id] == UNMATCHED) {
+          removed.add(previousViews.get(id));
+        }
+      }
+    }
+
+    /**
+     * Matches unmatched views with equal keys, pairing views which share a key in the order in
+     * which they occur.
+     *
+     * @param previousKeys the key of each previous view, indexed by id, or {@code null} for none
+     * @param currentKeys the key of each current view, indexed by id, or {@code null} for none
+     */
+    private void matchByKey(
+        List<@Nullable String> previousKeys, List<@Nullable String> currentKeys) {
+      Map<String, ArrayDeque<Integer>> unmatchedByKey = new HashMap<>();
+      for (int i = 0; i < previousTree.size(); i++) {
+        int id = previousTree.getIdAtPreorderIndex(i);
+        String key = previousKeys.get(id);
+        if ((key == null) || (currentIds[id] != UNMATCHED)) {
+          continue;
+        }
+        ArrayDeque<Integer> ids = unmatchedByKey.get(key);
+        if (ids == null) {
+          ids = new ArrayDeque<>();
+          unmatchedByKey.put(key, ids);
+        }
+        ids.add(id);
+      }
+      if (unmatchedByKey.isEmpty()) {
+        return;
+      }
+      for (int i = 0; i < currentTree.size(); i++) {
+        int id = currentTree.getIdAtPreorderIndex(i);
+        String key = currentKeys.get(id);
+        if ((key == null) || (previousIds[id] != UNMATCHED)) {
+          continue;
+        }
+        ArrayDeque<Integer> ids = unmatchedByKey.get(key);
+        Integer previousId = (ids == null) ? null : ids.poll();
+        if (previousId != null) {
+          setMatched(previousId, id);
+        }
+      }
+    }
+
+    /**
+     * Matches unmatched roots, and unmatched children of matched parents, with the view at the same
+     * position if it is unmatched and has the same class name. Parents are visited before their
+     * children, so matches made here extend to the children of newly matched views.
+     */
+    @SuppressWarnings("ReferenceEquality")
+    private void matchByPosition() {
+      List<ViewHierarchyElement> previousRoots = new ArrayList<>();
+      for (int i = 0; i < previousTree.size(); i++) {
+        int id = previousTree.getIdAtPreorderIndex(i);
+        if (previousTree.getParentId(id) == ViewTreeIndex.NO_PARENT) {
+          previousRoots.add(previousViews.get(id));
+        }
+      }
+      int rootIndex = 0;
+      for (int i = 0; i < currentTree.size(); i++) {
+        int id = currentTree.getIdAtPreorderIndex(i);
+        ViewHierarchyElement view = currentViews.get(id);
+        if (currentTree.getParentId(id) == ViewTreeIndex.NO_PARENT) {
+          if (rootIndex < previousRoots.size()) {
+            matchIfSimilar(previousRoots.get(rootIndex), view);
+          }
+          rootIndex++;
+        }
+        if (previousIds[id] == UNMATCHED) {
+          continue;
+        }
+        ViewHierarchyElement previousView = previousViews.get(previousIds[id]);
+        int childCount = Math.min(view.getChildViewCount(), previousView.getChildViewCount());
+        for (int childIndex = 0; childIndex < childCount; childIndex++) {
+          ViewHierarchyElement child = view.getChildView(childIndex);
+          ViewHierarchyElement previousChild = previousView.getChildView(childIndex);
+          if ((child.getParentView() == view) && (previousChild.getParentView() == previousView)) {
+            matchIfSimilar(previousChild, child);
+          }
+        }
+      }
+    }
+
+    private void matchIfSimilar(ViewHierarchyElement previousView, ViewHierarchyElement view) {
+      if ((previousIds[view.getId()] == UNMATCHED)
+          && (currentIds[previousView.getId()] == UNMATCHED)
+          && TextUtils.equals(previousView.getClassName(), view.getClassName())) {
+        setMatched(previousView.getId(), view.getId());
+      }
+    }
+
+    private void setMatched(int previousId, int currentId) {
+      previousIds[currentId] = previousId;
+      currentIds[previousId] = currentId;
+    }
+
+    private static List<@Nullable String> getResourceNames(
+        List<? extends ViewHierarchyElement> views) {
+      List<@Nullable String> resourceNames = new ArrayList<>(views.size());
+      for (ViewHierarchyElement view : views) {
+        resourceNames.add(view.getResourceName());
+      }
+      return resourceNames;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.dataflow.qual.Pure;
+
+/**
+ * A {@link ViewHierarchyElement} read from a proto, whose flags, bounds, sizes and colors are read
+ * from the {@link ViewHierarchyColumns} shared by the views of its window rather than held in
+ * fields of its own. The corresponding fields of {@link ViewHierarchyElement} are left unset.
+ */
+final class ColumnarViewHierarchyElement extends ViewHierarchyElement {
+
+  private final ViewHierarchyColumns columns;
+
+  ColumnarViewHierarchyElement(ViewHierarchyElementProto proto, ViewHierarchyColumns columns) {
+    super(proto);
+    this.columns = columns;
+  }
+
+  @Pure
+  @Override
+  public boolean isImportantForAccessibility() {
+    return columns.isImportantForAccessibility(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Boolean isVisibleToUser() {
+    return columns.isVisibleToUser(id);
+  }
+
+  @Pure
+  @Override
+  public boolean isClickable() {
+    return columns.isClickable(id);
+  }
+
+  @Pure
+  @Override
+  public boolean isLongClickable() {
+    return columns.isLongClickable(id);
+  }
+
+  @Pure
+  @Override
+  public boolean isFocusable() {
+    return columns.isFocusable(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Boolean isEditable() {
+    return columns.isEditable(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Boolean isScrollable() {
+    return columns.isScrollable(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Boolean canScrollForward() {
+    return columns.canScrollForward(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Boolean canScrollBackward() {
+    return columns.canScrollBackward(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Boolean isCheckable() {
+    return columns.isCheckable(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Boolean isChecked() {
+    return columns.isChecked(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Boolean hasTouchDelegate() {
+    return columns.hasTouchDelegate(id);
+  }
+
+  @Pure
+  @Override
+  public boolean isScreenReaderFocusable() {
+    return columns.isScreenReaderFocusable(id);
+  }
+
+  @Pure
+  @Override
+  @Nullable Rect getBoundsInScreenIfKnown() {
+    return columns.getBoundsInScreen(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Integer getNonclippedHeight() {
+    return columns.getNonclippedHeight(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Integer getNonclippedWidth() {
+    return columns.getNonclippedWidth(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Float getTextSize() {
+    return columns.getTextSize(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Integer getTextSizeUnit() {
+    return columns.getTextSizeUnit(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Integer getTextColor() {
+    return columns.getTextColor(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Integer getBackgroundDrawableColor() {
+    return columns.getBackgroundDrawableColor(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Integer getTypefaceStyle() {
+    return columns.getTypefaceStyle(id);
+  }
+
+  @Pure
+  @Override
+  public boolean isEnabled() {
+    return columns.isEnabled(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Integer getDrawingOrder() {
+    return columns.getDrawingOrder(id);
+  }
+
+  @Pure
+  @Override
+  public @Nullable Integer getHintTextColor() {
+    return columns.getHintTextColor(id);
+  }
+}
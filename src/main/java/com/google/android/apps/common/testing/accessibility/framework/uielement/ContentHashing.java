@@ -0,0 +1,58 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Helpers for the 64-bit content hashes of hierarchy elements. A hash is accumulated by folding in
+ * values with {@link #mix(long, long)}, and completed with {@link #finish(long)}.
+ */
+final class ContentHashing {
+
+  /** The initial value of a hash. */
+  static final long SEED = 0x6A09E667F3BCC909L;
+
+  private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  /** Folded in for {@code null} values, so that they differ from zero and from empty text. */
+  private static final long NULL_VALUE = 0x5BE0CD19137E2179L;
+
+  private ContentHashing() {}
+
+  /** Folds a value into a hash. The result depends on the order in which values are folded. */
+  static long mix(long hash, long value) {
+    return (Long.rotateLeft(hash, 23) ^ value) * MULTIPLIER;
+  }
+
+  /** Folds the hash code of an object, or a marker for {@code null}, into a hash. */
+  static long mix(long hash, @Nullable Object value) {
+    return mix(hash, (value == null) ? NULL_VALUE : value.hashCode());
+  }
+
+  /**
+   * Folds the characters of text, or a marker for {@code null}, into a hash. Texts which are equal
+   * according to {@link
+   * com.google.android.apps.common.testing.accessibility.framework.replacements.TextUtils#equals}
+   * contribute equal values, regardless of their type or spans.
+   */
+  static long mixText(long hash, @Nullable CharSequence text) {
+    if (text == null) {
+      return mix(hash, NULL_VALUE);
+    }
+    int textHash = 0;
+    for (int i = 0; i < text.length(); i++) {
+      textHash = (31 * textHash) + text.charAt(i);
+    }
+    return mix(mix(hash, text.length()), textHash);
+  }
+
+  /** Completes a hash, so that every bit of the result depends on every value folded in. */
+  static long finish(long hash) {
+    // The finalization step of MurmurHash3's 64-bit variant.
+    hash ^= hash >>> 33;
+    hash *= 0xFF51AFD7ED558CCDL;
+    hash ^= hash >>> 33;
+    hash *= 0xC4CEB93FE53F90F1L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,160 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A memo of attributes derived from the views of an {@link AccessibilityHierarchy}, such as
+ * whether a view would gain accessibility focus, keyed by {@link
+ * ViewHierarchyElement#getCondensedUniqueId()}. As the hierarchy does not change once built, each
+ * attribute of a view need be computed only once, however many checks ask for it. Attributes may
+ * also be derived for a whole window at once, such as a table with an entry for each view.
+ *
+ * <p>Instances are safe for use by multiple threads. Two threads which ask for the same attribute
+ * of the same view at once may both compute it, in which case the first value stored is kept.
+ */
+public final class DerivedAttributes {
+
+  /** Stored in place of {@code null} values, which a concurrent map cannot hold. */
+  private static final Object NULL_VALUE = new Object();
+
+  private final ConcurrentMap<Key<?>, ConcurrentMap<Long, Object>> viewValues =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Key<?>, ConcurrentMap<Long, Object>> windowValues =
+      new ConcurrentHashMap<>();
+
+  DerivedAttributes() {}
+
+  /**
+   * Returns the value of an attribute of a view, computing and storing it if it has not already
+   * been computed.
+   *
+   * <p>The computation may ask for attributes of other views, such as those of the view's parent,
+   * but must not ask for the same attribute of the same view.
+   *
+   * @param key identifies the attribute
+   * @param view the view, which must belong to the hierarchy that owns this memo
+   * @param computation computes the attribute from the view
+   * @return the value of the attribute, which may be {@code null} if the computation allows it
+   */
+  public <T> T get(Key<T> key, ViewHierarchyElement view, Computation<T> computation) {
+    ConcurrentMap<Long, Object> values = getValues(viewValues, key);
+    long id = view.getCondensedUniqueId();
+    @Nullable Object value = values.get(id);
+    if (value == null) {
+      value = putIfAbsent(values, id, computation.compute(view));
+    }
+    return unwrap(value);
+  }
+
+  /**
+   * Returns the value of an attribute of a window, computing and storing it if it has not already
+   * been computed.
+   *
+   * @param key identifies the attribute, independently of the keys of attributes of views
+   * @param window the window, which must belong to the hierarchy that owns this memo
+   * @param computation computes the attribute from the window
+   * @return the value of the attribute, which may be {@code null} if the computation allows it
+   */
+  public <T> T getForWindow(
+      Key<T> key, WindowHierarchyElement window, WindowComputation<T> computation) {
+    ConcurrentMap<Long, Object> values = getValues(windowValues, key);
+    long id = window.getId();
+    @Nullable Object value = values.get(id);
+    if (value == null) {
+      value = putIfAbsent(values, id, computation.compute(window));
+    }
+    return unwrap(value);
+  }
+
+  private static ConcurrentMap<Long, Object> getValues(
+      ConcurrentMap<Key<?>, ConcurrentMap<Long, Object>> valuesByKey, Key<?> key) {
+    ConcurrentMap<Long, Object> values = valuesByKey.get(key);
+    if (values == null) {
+      values = new ConcurrentHashMap<>();
+      @Nullable ConcurrentMap<Long, Object> existing = valuesByKey.putIfAbsent(key, values);
+      if (existing != null) {
+        values = existing;
+      }
+    }
+    return values;
+  }
+
+  /** Stores a computed value unless another thread got there first, and returns the value kept. */
+  private static Object putIfAbsent(
+      ConcurrentMap<Long, Object> values, long id, @Nullable Object computed) {
+    Object value = (computed == null) ? NULL_VALUE : computed;
+    @Nullable Object existing = values.putIfAbsent(id, value);
+    return (existing == null) ? value : existing;
+  }
+
+  @SuppressWarnings("unchecked") // Values are stored only under a key of the same type
+  private static <T> T unwrap(Object value) {
+    return (T) ((value == NULL_VALUE) ? null : value);
+  }
+
+  /**
+   * Identifies an attribute. Keys are equal if their names and qualifiers are equal, so a
+   * qualifier such as a {@link java.util.Locale} may distinguish variants of one attribute. Equal
+   * keys must have the same type of value.
+   *
+   * @param <T> the type of the value of the attribute
+   */
+  public static final class Key<T> {
+    private final String name;
+    private final @Nullable Object qualifier;
+
+    public Key(String name) {
+      this(name, null);
+    }
+
+    public Key(String name, @Nullable Object qualifier) {
+      this.name = checkNotNull(name);
+      this.qualifier = qualifier;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key<?> other = (Key<?>) o;
+      return name.equals(other.name) && Objects.equals(qualifier, other.qualifier);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(name, qualifier);
+    }
+
+    @Override
+    public String toString() {
+      return (qualifier == null) ? name : (name + "[" + qualifier + "]");
+    }
+  }
+
+  /**
+   * Computes an attribute of a view.
+   *
+   * @param <T> the type of the value of the attribute
+   */
+  public interface Computation<T> {
+    T compute(ViewHierarchyElement view);
+  }
+
+  /**
+   * Computes an attribute of a window.
+   *
+   * @param <T> the type of the value of the attribute
+   */
+  public interface WindowComputation<T> {
+    T compute(WindowHierarchyElement window);
+  }
+}
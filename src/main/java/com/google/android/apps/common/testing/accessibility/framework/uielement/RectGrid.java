@@ -0,0 +1,313 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import java.util.Arrays;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A hierarchical uniform grid over a set of rectangles, each belonging to an owner identified by a
+ * non-negative integer, for finding the rectangles which intersect a region or lie nearest to it.
+ *
+ * <p>Level 0 of the grid has roughly as many cells as there are rectangles, and the cells of each
+ * further level are twice as wide and tall. Each rectangle is stored at the lowest level whose
+ * cells are at least as large as the rectangle, so it falls within at most four cells however large
+ * it is, and a query visits only the cells it overlaps at each level.
+ *
+ * <p>Intersection is determined exactly as by {@link Rect#intersects(Rect, Rect)}, which also
+ * holds for some pairs involving a rectangle of zero width or height, so such rectangles are
+ * stored too.
+ *
+ * <p>Instances are immutable.
+ */
+final class RectGrid {
+
+  /** The value of {@link #nearest(Rect)} when the grid is empty. */
+  static final int NO_OWNER = -1;
+
+  private static final int MIN_CELL_SIZE = 8;
+
+  private final int count;
+  private final int[] lefts;
+  private final int[] tops;
+  private final int[] rights;
+  private final int[] bottoms;
+  private final int[] owners;
+
+  /** The level at which each rectangle is stored. */
+  private final int[] levels;
+
+  /** The smallest and largest coordinates of any rectangle, inclusive. */
+  private final int minX;
+  private final int minY;
+  private final int maxX;
+  private final int maxY;
+
+  /** The width and height of the cells of level 0. */
+  private final int cellSize;
+
+  private final int[] columnCounts;
+
+  /**
+   * For each level, the position in {@link #cellEntries} of the first rectangle of each cell, in
+   * row-major order, followed by the total number of entries at the level.
+   */
+  private final int[][] cellStarts;
+
+  /** For each level, the indices of the rectangles in each cell. */
+  private final int[][] cellEntries;
+
+  /**
+   * Builds a grid over a list of rectangles.
+   *
+   * @param rects the rectangles to store
+   * @param rectOwners the owner of each rectangle in {@code rects}
+   */
+  RectGrid(List<Rect> rects, int[] rectOwners) {
+    count = rects.size();
+    lefts = new int[count];
+    tops = new int[count];
+    rights = new int[count];
+    bottoms = new int[count];
+    owners = Arrays.copyOf(rectOwners, count);
+    levels = new int[count];
+
+    int extentMinX = Integer.MAX_VALUE;
+    int extentMinY = Integer.MAX_VALUE;
+    int extentMaxX = Integer.MIN_VALUE;
+    int extentMaxY = Integer.MIN_VALUE;
+    for (int i = 0; i < count; i++) {
+      Rect rect = rects.get(i);
+      lefts[i] = rect.getLeft();
+      tops[i] = rect.getTop();
+      rights[i] = rect.getRight();
+      bottoms[i] = rect.getBottom();
+      extentMinX = Math.min(extentMinX, Math.min(lefts[i], rights[i]));
+      extentMinY = Math.min(extentMinY, Math.min(tops[i], bottoms[i]));
+      extentMaxX = Math.max(extentMaxX, Math.max(lefts[i], rights[i]));
+      extentMaxY = Math.max(extentMaxY, Math.max(tops[i], bottoms[i]));
+    }
+    if (count == 0) {
+      extentMinX = 0;
+      extentMinY = 0;
+      extentMaxX = 0;
+      extentMaxY = 0;
+    }
+    minX = extentMinX;
+    minY = extentMinY;
+    maxX = extentMaxX;
+    maxY = extentMaxY;
+
+    long width = (long) maxX - minX + 1;
+    long height = (long) maxY - minY + 1;
+    cellSize =
+        (int)
+            Math.max(
+                MIN_CELL_SIZE, Math.ceil(Math.sqrt((double) width * height / Math.max(1, count))));
+    int levelCount = 1;
+    while (((long) cellSize << (levelCount - 1)) < Math.max(width, height)) {
+      levelCount++;
+    }
+    columnCounts = new int[levelCount];
+    cellStarts = new int[levelCount][];
+    cellEntries = new int[levelCount][];
+    for (int level = 0; level < levelCount; level++) {
+      long levelCellSize = (long) cellSize << level;
+      columnCounts[level] = (int) ((width + levelCellSize - 1) / levelCellSize);
+      int rowCount = (int) ((height + levelCellSize - 1) / levelCellSize);
+      cellStarts[level] = new int[(columnCounts[level] * rowCount) + 1];
+    }
+
+    // Count the entries of each cell, then place them, so that each level is stored contiguously.
+    for (int i = 0; i < count; i++) {
+      long size =
+          Math.max(Math.abs((long) rights[i] - lefts[i]), Math.abs((long) bottoms[i] - tops[i]));
+      int level = 0;
+      while (((long) cellSize << level) < size) {
+        level++;
+      }
+      levels[i] = level;
+      forEachCell(i, cellStarts[level], null);
+    }
+    for (int level = 0; level < levelCount; level++) {
+      int[] starts = cellStarts[level];
+      int total = 0;
+      for (int cell = 0; cell < starts.length; cell++) {
+        int cellCount = starts[cell];
+        starts[cell] = total;
+        total += cellCount;
+      }
+      cellEntries[level] = new int[total];
+    }
+    int[][] nextPositions = new int[levelCount][];
+    for (int level = 0; level < levelCount; level++) {
+      nextPositions[level] = Arrays.copyOf(cellStarts[level], cellStarts[level].length);
+    }
+    for (int i = 0; i < count; i++) {
+      forEachCell(i, nextPositions[levels[i]], cellEntries[levels[i]]);
+    }
+  }
+
+  /**
+   * Visits each cell covered by a rectangle at its level. If {@code entries} is {@code null}, the
+   * count of each cell is incremented; otherwise the rectangle is placed at the next position of
+   * each cell.
+   */
+  private void forEachCell(int entry, int[] positions, int @Nullable [] entries) {
+    int level = levels[entry];
+    int firstColumn = column(Math.min(lefts[entry], rights[entry]), level);
+    int lastColumn = column(Math.max(lefts[entry], rights[entry]), level);
+    int firstRow = row(Math.min(tops[entry], bottoms[entry]), level);
+    int lastRow = row(Math.max(tops[entry], bottoms[entry]), level);
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        int cell = (row * columnCounts[level]) + column;
+        if (entries == null) {
+          positions[cell]++;
+        } else {
+          entries[positions[cell]++] = entry;
+        }
+      }
+    }
+  }
+
+  /** Returns the number of rectangles stored. */
+  int size() {
+    return count;
+  }
+
+  /**
+   * Finds the owners of the rectangles which intersect a region, as determined by {@link
+   * Rect#intersects(Rect, Rect)}.
+   *
+   * @return the distinct owners, in ascending order
+   */
+  int[] query(Rect region) {
+    IntList entries = new IntList();
+    findEntries(region.getLeft(), region.getTop(), region.getRight(), region.getBottom(), entries);
+    int[] result = new int[entries.size];
+    for (int i = 0; i < entries.size; i++) {
+      result[i] = owners[entries.values[i]];
+    }
+    Arrays.sort(result);
+    int distinct = 0;
+    for (int i = 0; i < result.length; i++) {
+      if ((i == 0) || (result[i] != result[i - 1])) {
+        result[distinct++] = result[i];
+      }
+    }
+    return Arrays.copyOf(result, distinct);
+  }
+
+  /**
+   * Finds the owner of the rectangle nearest to a region, measured by the straight-line distance
+   * between their closest points, which is zero if they touch or overlap. Ties are broken in favor
+   * of the lowest owner.
+   *
+   * @return the owner, or {@link #NO_OWNER} if the grid is empty
+   */
+  int nearest(Rect region) {
+    if (count == 0) {
+      return NO_OWNER;
+    }
+    // Search ever larger neighborhoods of the region. A rectangle outside a neighborhood of
+    // distance d is at least d away, so the search ends once a rectangle nearer than d is found.
+    IntList entries = new IntList();
+    for (long distance = cellSize; ; distance *= 2) {
+      int left = clampToInt(region.getLeft() - distance);
+      int top = clampToInt(region.getTop() - distance);
+      int right = clampToInt(region.getRight() + distance);
+      int bottom = clampToInt(region.getBottom() + distance);
+      entries.size = 0;
+      findEntries(left, top, right, bottom, entries);
+      int bestOwner = NO_OWNER;
+      long bestDistanceSquared = Long.MAX_VALUE;
+      for (int i = 0; i < entries.size; i++) {
+        int entry = entries.values[i];
+        long dx = gap(region.getLeft(), region.getRight(), lefts[entry], rights[entry]);
+        long dy = gap(region.getTop(), region.getBottom(), tops[entry], bottoms[entry]);
+        long distanceSquared = (dx * dx) + (dy * dy);
+        if ((distanceSquared < bestDistanceSquared)
+            || ((distanceSquared == bestDistanceSquared) && (owners[entry] < bestOwner))) {
+          bestDistanceSquared = distanceSquared;
+          bestOwner = owners[entry];
+        }
+      }
+      boolean coversExtent = (left < minX) && (top < minY) && (right > maxX) && (bottom > maxY);
+      if (((bestOwner != NO_OWNER) && (bestDistanceSquared < distance * distance))
+          || coversExtent) {
+        return bestOwner;
+      }
+    }
+  }
+
+  /** Adds the index of each rectangle which intersects the given region to {@code result}. */
+  private void findEntries(int left, int top, int right, int bottom, IntList result) {
+    // Any rectangle which intersects the region shares a cell with it, where each is taken to
+    // cover the closed ranges between its coordinates.
+    int regionMinX = Math.max(Math.min(left, right), minX);
+    int regionMinY = Math.max(Math.min(top, bottom), minY);
+    int regionMaxX = Math.min(Math.max(left, right), maxX);
+    int regionMaxY = Math.min(Math.max(top, bottom), maxY);
+    if ((count == 0) || (regionMinX > regionMaxX) || (regionMinY > regionMaxY)) {
+      return;
+    }
+    for (int level = 0; level < cellStarts.length; level++) {
+      int firstColumn = column(regionMinX, level);
+      int lastColumn = column(regionMaxX, level);
+      int firstRow = row(regionMinY, level);
+      int lastRow = row(regionMaxY, level);
+      int[] starts = cellStarts[level];
+      int[] entries = cellEntries[level];
+      for (int row = firstRow; row <= lastRow; row++) {
+        for (int column = firstColumn; column <= lastColumn; column++) {
+          int cell = (row * columnCounts[level]) + column;
+          for (int position = starts[cell]; position < starts[cell + 1]; position++) {
+            int entry = entries[position];
+            // A rectangle may lie in several cells. It is considered only in the first cell it
+            // shares with the region, so that it is reported once.
+            if ((column
+                    == Math.max(firstColumn, column(Math.min(lefts[entry], rights[entry]), level)))
+                && (row == Math.max(firstRow, row(Math.min(tops[entry], bottoms[entry]), level)))
+                && (top < bottoms[entry])
+                && (tops[entry] < bottom)
+                && (left < rights[entry])
+                && (lefts[entry] < right)) {
+              result.add(entry);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private int column(int x, int level) {
+    return (int) (((long) x - minX) / ((long) cellSize << level));
+  }
+
+  private int row(int y, int level) {
+    return (int) (((long) y - minY) / ((long) cellSize << level));
+  }
+
+  /** Returns the distance between two ranges along one axis, or zero if they overlap. */
+  private static long gap(int start, int end, int otherStart, int otherEnd) {
+    return Math.max(0, Math.max((long) start - otherEnd, (long) otherStart - end));
+  }
+
+  private static int clampToInt(long value) {
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+  }
+
+  /** A growable list of ints. */
+  private static final class IntList {
+    int[] values = new int[16];
+    int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A spatial index of the views of a {@link WindowHierarchyElement}, for finding the views whose
+ * {@link ViewHierarchyElement#getBoundsInScreen() bounds} or {@link
+ * ViewHierarchyElement#getTextCharacterLocations() text character locations} intersect a region,
+ * or whose bounds lie nearest to it. A query visits only the parts of the index near the region,
+ * rather than every view.
+ *
+ * <p>Intersection is determined exactly as by {@link Rect#intersects(Rect, Rect)}, so the results
+ * of a query are the same as those of testing every view in turn.
+ *
+ * <p>Instances are immutable, and are obtained from {@link
+ * WindowHierarchyElement#getViewBoundsIndex()}.
+ */
+public final class ViewBoundsIndex {
+
+  private final List<? extends ViewHierarchyElement> views;
+  private final RectGrid boundsGrid;
+
+  /** Built on first use, as few checks look at text character locations. */
+  private volatile @Nullable RectGrid characterLocationsGrid;
+
+  ViewBoundsIndex(List<? extends ViewHierarchyElement> views) {
+    this.views = views;
+    List<Rect> bounds = new ArrayList<>(views.size());
+    int[] ids = new int[views.size()];
+    for (int i = 0; i < views.size(); i++) {
+      ViewHierarchyElement view = views.get(i);
+      bounds.add(view.getBoundsInScreen());
+      ids[i] = view.getId();
+    }
+    boundsGrid = new RectGrid(bounds, ids);
+  }
+
+  /**
+   * Returns the views whose bounds in screen intersect a region.
+   *
+   * @param region the region, in screen coordinates
+   * @return the views, in order of their ids
+   */
+  public ImmutableList<ViewHierarchyElement> query(Rect region) {
+    return toViews(boundsGrid.query(region));
+  }
+
+  /**
+   * Returns the view whose bounds in screen lie nearest to a region, measured by the straight-line
+   * distance between their closest points. Views which touch or overlap the region are at distance
+   * zero. Ties are broken in favor of the view with the lowest id.
+   *
+   * @param region the region, in screen coordinates
+   * @return the nearest view, or {@code null} if the window has no views
+   */
+  public @Nullable ViewHierarchyElement nearest(Rect region) {
+    int id = boundsGrid.nearest(region);
+    return (id == RectGrid.NO_OWNER) ? null : views.get(id);
+  }
+
+  /**
+   * Returns the views with at least one text character location which intersects a region.
+   *
+   * @param region the region, in screen coordinates
+   * @return the views, in order of their ids
+   */
+  public ImmutableList<ViewHierarchyElement> queryCharacterLocations(Rect region) {
+    RectGrid grid = characterLocationsGrid;
+    if (grid == null) {
+      grid = buildCharacterLocationsGrid();
+      characterLocationsGrid = grid;
+    }
+    return toViews(grid.query(region));
+  }
+
+  private RectGrid buildCharacterLocationsGrid() {
+    List<Rect> locations = new ArrayList<>();
+    List<Integer> ids = new ArrayList<>();
+    for (ViewHierarchyElement view : views) {
+      for (Rect location : view.getTextCharacterLocations()) {
+        locations.add(location);
+        ids.add(view.getId());
+      }
+    }
+    int[] owners = new int[ids.size()];
+    for (int i = 0; i < owners.length; i++) {
+      owners[i] = ids.get(i);
+    }
+    return new RectGrid(locations, owners);
+  }
+
+  private ImmutableList<ViewHierarchyElement> toViews(int[] ids) {
+    ImmutableList.Builder<ViewHierarchyElement> result =
+        ImmutableList.builderWithExpectedSize(ids.length);
+    for (int id : ids) {
+      result.add(views.get(id));
+    }
+    return result.build();
+  }
+}
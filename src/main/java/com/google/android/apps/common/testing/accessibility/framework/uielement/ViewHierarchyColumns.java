@@ -0,0 +1,275 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AccessibilityHierarchyProtos.ViewHierarchyElementProto;
+import com.google.android.apps.common.testing.accessibility.framework.uielement.proto.AndroidFrameworkProtos.RectProto;
+import java.util.BitSet;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The flags, bounds, sizes and colors of the views of a window, held in columns
+ * (struct-of-arrays) rather than in the fields of each {@link ViewHierarchyElement}. Flags are held
+ * in {@link BitSet}s, bounds in an {@code int[]} and sizes and colors in primitive arrays, each
+ * indexed by the view's {@link ViewHierarchyElement#getId() id}, so a deserialized window holds no
+ * boxed value or {@link Rect} per view for these properties.
+ *
+ * <p>Instances are immutable, and are shared by the {@link ColumnarViewHierarchyElement}s of one
+ * window.
+ */
+final class ViewHierarchyColumns {
+
+  private final BitSet importantForAccessibility;
+  private final BitSet clickable;
+  private final BitSet longClickable;
+  private final BitSet focusable;
+  private final BitSet screenReaderFocusable;
+  private final BitSet enabled;
+
+  private final NullableBooleanColumn visibleToUser;
+  private final NullableBooleanColumn editable;
+  private final NullableBooleanColumn scrollable;
+  private final NullableBooleanColumn canScrollForward;
+  private final NullableBooleanColumn canScrollBackward;
+  private final NullableBooleanColumn checkable;
+  private final NullableBooleanColumn checked;
+  private final NullableBooleanColumn hasTouchDelegate;
+
+  /** The left, top, right and bottom of each view's bounds in screen, in groups of four. */
+  private final int[] bounds;
+
+  private final BitSet hasBounds;
+
+  private final NullableIntColumn nonclippedHeight;
+  private final NullableIntColumn nonclippedWidth;
+  private final NullableIntColumn textSizeUnit;
+  private final NullableIntColumn textColor;
+  private final NullableIntColumn backgroundDrawableColor;
+  private final NullableIntColumn typefaceStyle;
+  private final NullableIntColumn drawingOrder;
+  private final NullableIntColumn hintTextColor;
+
+  private final float[] textSizes;
+  private final BitSet hasTextSize;
+
+  /**
+   * @param views the views of a window, in which each view's position is equal to its id
+   */
+  ViewHierarchyColumns(List<ViewHierarchyElementProto> views) {
+    int size = views.size();
+    importantForAccessibility = new BitSet(size);
+    clickable = new BitSet(size);
+    longClickable = new BitSet(size);
+    focusable = new BitSet(size);
+    screenReaderFocusable = new BitSet(size);
+    enabled = new BitSet(size);
+    visibleToUser = new NullableBooleanColumn(size);
+    editable = new NullableBooleanColumn(size);
+    scrollable = new NullableBooleanColumn(size);
+    canScrollForward = new NullableBooleanColumn(size);
+    canScrollBackward = new NullableBooleanColumn(size);
+    checkable = new NullableBooleanColumn(size);
+    checked = new NullableBooleanColumn(size);
+    hasTouchDelegate = new NullableBooleanColumn(size);
+    bounds = new int[size * 4];
+    hasBounds = new BitSet(size);
+    nonclippedHeight = new NullableIntColumn(size);
+    nonclippedWidth = new NullableIntColumn(size);
+    textSizeUnit = new NullableIntColumn(size);
+    textColor = new NullableIntColumn(size);
+    backgroundDrawableColor = new NullableIntColumn(size);
+    typefaceStyle = new NullableIntColumn(size);
+    drawingOrder = new NullableIntColumn(size);
+    hintTextColor = new NullableIntColumn(size);
+    textSizes = new float[size];
+    hasTextSize = new BitSet(size);
+
+    for (int id = 0; id < size; id++) {
+      ViewHierarchyElementProto proto = views.get(id);
+      importantForAccessibility.set(id, proto.getImportantForAccessibility());
+      clickable.set(id, proto.getClickable());
+      longClickable.set(id, proto.getLongClickable());
+      focusable.set(id, proto.getFocusable());
+      screenReaderFocusable.set(id, proto.getScreenReaderFocusable());
+      enabled.set(id, proto.getEnabled());
+
+      visibleToUser.set(id, proto.hasVisibleToUser(), proto.getVisibleToUser());
+      editable.set(id, proto.hasEditable(), proto.getEditable());
+      scrollable.set(id, proto.hasScrollable(), proto.getScrollable());
+      canScrollForward.set(id, proto.hasCanScrollForward(), proto.getCanScrollForward());
+      canScrollBackward.set(id, proto.hasCanScrollBackward(), proto.getCanScrollBackward());
+      checkable.set(id, proto.hasCheckable(), proto.getCheckable());
+      checked.set(id, proto.hasChecked(), proto.getChecked());
+      hasTouchDelegate.set(id, proto.hasHasTouchDelegate(), proto.getHasTouchDelegate());
+
+      if (proto.hasBoundsInScreen()) {
+        RectProto rect = proto.getBoundsInScreen();
+        bounds[id * 4] = rect.getLeft();
+        bounds[(id * 4) + 1] = rect.getTop();
+        bounds[(id * 4) + 2] = rect.getRight();
+        bounds[(id * 4) + 3] = rect.getBottom();
+        hasBounds.set(id);
+      }
+
+      nonclippedHeight.set(id, proto.hasNonclippedHeight(), proto.getNonclippedHeight());
+      nonclippedWidth.set(id, proto.hasNonclippedWidth(), proto.getNonclippedWidth());
+      textSizeUnit.set(id, proto.hasTextSizeUnit(), proto.getTextSizeUnit());
+      textColor.set(id, proto.hasTextColor(), proto.getTextColor());
+      backgroundDrawableColor.set(
+          id, proto.hasBackgroundDrawableColor(), proto.getBackgroundDrawableColor());
+      typefaceStyle.set(id, proto.hasTypefaceStyle(), proto.getTypefaceStyle());
+      drawingOrder.set(id, proto.hasDrawingOrder(), proto.getDrawingOrder());
+      hintTextColor.set(id, proto.hasHintTextColor(), proto.getHintTextColor());
+
+      if (proto.hasTextSize()) {
+        textSizes[id] = proto.getTextSize();
+        hasTextSize.set(id);
+      }
+    }
+  }
+
+  boolean isImportantForAccessibility(int id) {
+    return importantForAccessibility.get(id);
+  }
+
+  boolean isClickable(int id) {
+    return clickable.get(id);
+  }
+
+  boolean isLongClickable(int id) {
+    return longClickable.get(id);
+  }
+
+  boolean isFocusable(int id) {
+    return focusable.get(id);
+  }
+
+  boolean isScreenReaderFocusable(int id) {
+    return screenReaderFocusable.get(id);
+  }
+
+  boolean isEnabled(int id) {
+    return enabled.get(id);
+  }
+
+  @Nullable Boolean isVisibleToUser(int id) {
+    return visibleToUser.get(id);
+  }
+
+  @Nullable Boolean isEditable(int id) {
+    return editable.get(id);
+  }
+
+  @Nullable Boolean isScrollable(int id) {
+    return scrollable.get(id);
+  }
+
+  @Nullable Boolean canScrollForward(int id) {
+    return canScrollForward.get(id);
+  }
+
+  @Nullable Boolean canScrollBackward(int id) {
+    return canScrollBackward.get(id);
+  }
+
+  @Nullable Boolean isCheckable(int id) {
+    return checkable.get(id);
+  }
+
+  @Nullable Boolean isChecked(int id) {
+    return checked.get(id);
+  }
+
+  @Nullable Boolean hasTouchDelegate(int id) {
+    return hasTouchDelegate.get(id);
+  }
+
+  /** Returns a view's bounds in screen, or {@code null} if they are not known. */
+  @Nullable Rect getBoundsInScreen(int id) {
+    if (!hasBounds.get(id)) {
+      return null;
+    }
+    int offset = id * 4;
+    return new Rect(bounds[offset], bounds[offset + 1], bounds[offset + 2], bounds[offset + 3]);
+  }
+
+  @Nullable Integer getNonclippedHeight(int id) {
+    return nonclippedHeight.get(id);
+  }
+
+  @Nullable Integer getNonclippedWidth(int id) {
+    return nonclippedWidth.get(id);
+  }
+
+  @Nullable Float getTextSize(int id) {
+    return hasTextSize.get(id) ? textSizes[id] : null;
+  }
+
+  @Nullable Integer getTextSizeUnit(int id) {
+    return textSizeUnit.get(id);
+  }
+
+  @Nullable Integer getTextColor(int id) {
+    return textColor.get(id);
+  }
+
+  @Nullable Integer getBackgroundDrawableColor(int id) {
+    return backgroundDrawableColor.get(id);
+  }
+
+  @Nullable Integer getTypefaceStyle(int id) {
+    return typefaceStyle.get(id);
+  }
+
+  @Nullable Integer getDrawingOrder(int id) {
+    return drawingOrder.get(id);
+  }
+
+  @Nullable Integer getHintTextColor(int id) {
+    return hintTextColor.get(id);
+  }
+
+  /** A {@code @Nullable Boolean} of each view, as a pair of bits. */
+  private static final class NullableBooleanColumn {
+
+    private final BitSet known;
+    private final BitSet values;
+
+    NullableBooleanColumn(int size) {
+      known = new BitSet(size);
+      values = new BitSet(size);
+    }
+
+    void set(int id, boolean isKnown, boolean value) {
+      known.set(id, isKnown);
+      values.set(id, isKnown && value);
+    }
+
+    @Nullable Boolean get(int id) {
+      return known.get(id) ? Boolean.valueOf(values.get(id)) : null;
+    }
+  }
+
+  /** A {@code @Nullable Integer} of each view, as an {@code int} and a bit. */
+  private static final class NullableIntColumn {
+
+    private final int[] values;
+    private final BitSet known;
+
+    NullableIntColumn(int size) {
+      values = new int[size];
+      known = new BitSet(size);
+    }
+
+    void set(int id, boolean isKnown, int value) {
+      if (isKnown) {
+        values[id] = value;
+        known.set(id);
+      }
+    }
+
+    @Nullable Integer get(int id) {
+      return known.get(id) ? Integer.valueOf(values[id]) : null;
+    }
+  }
+}
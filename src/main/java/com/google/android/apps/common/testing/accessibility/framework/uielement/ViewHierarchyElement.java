@@ -28,7 +28,7 @@ import com.google.android.apps.common.testing.accessibility.framework.uielement.
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Objects;
@@ -107,6 +107,10 @@ public class ViewHierarchyElement {
   // A list of identifiers that represents all the superclasses of the corresponding view element.
   protected final List<Integer> superclassViews;
 
+  // The identifiers in superclassViews as a set of bits, created on first use. Creating it is
+  // deterministic, so a race between threads only duplicates work.
+  private volatile @Nullable BitSet superclassIds;
+
   protected ViewHierarchyElement(
       int id,
       @Nullable Integer parentId,
@@ -207,6 +211,11 @@ public class ViewHierarchyElement {
     this.textCharacterLocations = ImmutableList.copyOf(textCharacterLocations);
   }
 
+  /**
+   * Creates an element from a proto, except for the flags, bounds, sizes and colors, which a {@link
+   * ColumnarViewHierarchyElement} reads from the {@link ViewHierarchyColumns} of its window. Their
+   * fields are left unset.
+   */
   ViewHierarchyElement(ViewHierarchyElementProto proto) {
     checkNotNull(proto);
 
@@ -229,19 +238,19 @@ public class ViewHierarchyElement {
     text = proto.hasText() ? new SpannableString(proto.getText()) : null;
     stateDescription =
         proto.hasStateDescription() ? new SpannableString(proto.getStateDescription()) : null;
-    importantForAccessibility = proto.getImportantForAccessibility();
-    visibleToUser = proto.hasVisibleToUser() ? proto.getVisibleToUser() : null;
-    clickable = proto.getClickable();
-    longClickable = proto.getLongClickable();
-    focusable = proto.getFocusable();
-    editable = proto.hasEditable() ? proto.getEditable() : null;
-    scrollable = proto.hasScrollable() ? proto.getScrollable() : null;
-    canScrollForward = proto.hasCanScrollForward() ? proto.getCanScrollForward() : null;
-    canScrollBackward = proto.hasCanScrollBackward() ? proto.getCanScrollBackward() : null;
-    checkable = proto.hasCheckable() ? proto.getCheckable() : null;
-    checked = proto.hasChecked() ? proto.getChecked() : null;
-    hasTouchDelegate = proto.hasHasTouchDelegate() ? proto.getHasTouchDelegate() : null;
-    isScreenReaderFocusable = proto.getScreenReaderFocusable();
+    importantForAccessibility = false;
+    visibleToUser = null;
+    clickable = false;
+    longClickable = false;
+    focusable = false;
+    editable = null;
+    scrollable = null;
+    canScrollForward = null;
+    canScrollBackward = null;
+    checkable = null;
+    checked = null;
+    hasTouchDelegate = null;
+    isScreenReaderFocusable = false;
     if (proto.getTouchDelegateBoundsCount() > 0) {
       ImmutableList.Builder<Rect> builder = ImmutableList.<Rect>builder();
       for (int i = 0; i < proto.getTouchDelegateBoundsCount(); ++i) {
@@ -251,16 +260,15 @@ public class ViewHierarchyElement {
     } else {
       touchDelegateBounds = ImmutableList.of();
     }
-    boundsInScreen = proto.hasBoundsInScreen() ? new Rect(proto.getBoundsInScreen()) : null;
-    nonclippedHeight = proto.hasNonclippedHeight() ? proto.getNonclippedHeight() : null;
-    nonclippedWidth = proto.hasNonclippedWidth() ? proto.getNonclippedWidth() : null;
-    textSize = proto.hasTextSize() ? proto.getTextSize() : null;
-    textSizeUnit = proto.hasTextSizeUnit() ? proto.getTextSizeUnit() : null;
-    textColor = proto.hasTextColor() ? proto.getTextColor() : null;
-    backgroundDrawableColor =
-        proto.hasBackgroundDrawableColor() ? proto.getBackgroundDrawableColor() : null;
-    typefaceStyle = proto.hasTypefaceStyle() ? proto.getTypefaceStyle() : null;
-    enabled = proto.getEnabled();
+    boundsInScreen = null;
+    nonclippedHeight = null;
+    nonclippedWidth = null;
+    textSize = null;
+    textSizeUnit = null;
+    textColor = null;
+    backgroundDrawableColor = null;
+    typefaceStyle = null;
+    enabled = false;
     labeledById = proto.hasLabeledById() ? proto.getLabeledById() : null;
     accessibilityTraversalBeforeId =
         proto.hasAccessibilityTraversalBeforeId()
@@ -269,7 +277,7 @@ public class ViewHierarchyElement {
     accessibilityTraversalAfterId =
         proto.hasAccessibilityTraversalAfterId() ? proto.getAccessibilityTraversalAfterId() : null;
     superclassViews = proto.getSuperclassesList();
-    drawingOrder = proto.hasDrawingOrder() ? proto.getDrawingOrder() : null;
+    drawingOrder = null;
     ImmutableList.Builder<ViewHierarchyAction> actionBuilder = new ImmutableList.Builder<>();
     for (ViewHierarchyActionProto actionProto : proto.getActionsList()) {
       actionBuilder.add(new ViewHierarchyAction(actionProto));
@@ -277,7 +285,7 @@ public class ViewHierarchyElement {
     actionList = actionBuilder.build();
     layoutParams = proto.hasLayoutParams() ? new LayoutParams(proto.getLayoutParams()) : null;
     hintText = proto.hasHintText() ? new SpannableString(proto.getHintText()) : null;
-    hintTextColor = proto.hasHintTextColor() ? proto.getHintTextColor() : null;
+    hintTextColor = null;
     ImmutableList.Builder<Rect> characterLocations = ImmutableList.<Rect>builder();
     for (RectProto rectProto : proto.getTextCharacterLocationsList()) {
       characterLocations.add(new Rect(rectProto));
@@ -344,16 +352,21 @@ public class ViewHierarchyElement {
 
   /**
    * @return an unmodifiable {@link List} containing this {@link ViewHierarchyElement} and any
-   *     descendants, direct or indirect, in depth-first ordering.
+   *     descendants, direct or indirect, in depth-first ordering. The list is a view of a slice of
+   *     the window's pre-order, so obtaining it takes constant time.
    */
   public List<? extends ViewHierarchyElement> getSelfAndAllDescendants() {
-    List<ViewHierarchyElement> listToPopulate = new ArrayList<>();
-    listToPopulate.add(this);
-    for (int i = 0; i < getChildViewCount(); ++i) {
-      listToPopulate.addAll(getChildView(i).getSelfAndAllDescendants());
-    }
+    return getWindow().getViewTreeIndex().getSubtree(id, getWindow().getAllViews());
+  }
 
-    return Collections.unmodifiableList(listToPopulate);
+  /**
+   * Returns {@code true} if this element is {@code element} or one of its descendants, direct or
+   * indirect. This takes constant time.
+   */
+  public boolean isSelfOrDescendantOf(ViewHierarchyElement element) {
+    WindowHierarchyElement window = getWindow();
+    return (window == element.getWindow())
+        && window.getViewTreeIndex().isSelfOrDescendant(element.getId(), id);
   }
 
   /**
@@ -420,7 +433,7 @@ public class ViewHierarchyElement {
     if (id == null) {
       return false;
     }
-    return superclassViews.contains(id);
+    return (id >= 0) ? getSuperclassIds().get(id) : superclassViews.contains(id);
   }
 
   /**
@@ -637,7 +650,14 @@ public class ViewHierarchyElement {
    */
   @Pure
   public Rect getBoundsInScreen() {
-    return (boundsInScreen != null) ? boundsInScreen : Rect.EMPTY;
+    Rect bounds = getBoundsInScreenIfKnown();
+    return (bounds != null) ? bounds : Rect.EMPTY;
+  }
+
+  /** Returns the bounds of this view in screen, or {@code null} if they are not known. */
+  @Pure
+  @Nullable Rect getBoundsInScreenIfKnown() {
+    return boundsInScreen;
   }
 
   /**
@@ -869,6 +889,19 @@ public class ViewHierarchyElement {
     return isAgaistScrollableEdgeOfAncestor(ancestor);
   }
 
+  /**
+   * Returns a 64-bit hash of the content of this element and its descendants. It folds in every
+   * property compared by {@link #equals(Object)}, and the content hashes of the children, so equal
+   * elements always have equal content hashes. Elements with different content hashes are
+   * therefore unequal, and matching content hashes indicate equal subtrees with high probability.
+   *
+   * <p>The content hashes of all elements in a window are computed together, bottom-up, on first
+   * use, after which this takes constant time.
+   */
+  public long getContentHash() {
+    return getWindow().getViewContentHash(id);
+  }
+
   @Override
   public int hashCode() {
     return getId();
@@ -911,8 +944,9 @@ public class ViewHierarchyElement {
     if (!TextUtils.isEmpty(text)) {
       sb.append(" text=").append(text);
     }
-    if (boundsInScreen != null) {
-      sb.append(" bounds=").append(boundsInScreen);
+    Rect bounds = getBoundsInScreenIfKnown();
+    if (bounds != null) {
+      sb.append(" bounds=").append(bounds);
     }
     return sb.append("]").toString();
   }
@@ -928,6 +962,22 @@ public class ViewHierarchyElement {
   /** Add a view class id to superclass list. */
   void addIdToSuperclassViewList(int id) {
     this.superclassViews.add(id);
+    superclassIds = null;
+  }
+
+  /** Returns the non-negative identifiers in {@link #superclassViews} as a set of bits. */
+  private BitSet getSuperclassIds() {
+    BitSet ids = superclassIds;
+    if (ids == null) {
+      ids = new BitSet();
+      for (int id : superclassViews) {
+        if (id >= 0) {
+          ids.set(id);
+        }
+      }
+      superclassIds = ids;
+    }
+    return ids;
   }
 
   /** Returns a list of actions exposed by this view element. */
@@ -969,61 +1019,80 @@ public class ViewHierarchyElement {
     if (!TextUtils.isEmpty(stateDescription)) {
       builder.setStateDescription(stateDescription.toProto());
     }
-    builder.setImportantForAccessibility(importantForAccessibility);
+    builder.setImportantForAccessibility(isImportantForAccessibility());
+    @Nullable Boolean visibleToUser = isVisibleToUser();
     if (visibleToUser != null) {
       builder.setVisibleToUser(visibleToUser);
     }
-    builder.setClickable(clickable).setLongClickable(longClickable).setFocusable(focusable);
+    builder
+        .setClickable(isClickable())
+        .setLongClickable(isLongClickable())
+        .setFocusable(isFocusable());
+    @Nullable Boolean editable = isEditable();
     if (editable != null) {
       builder.setEditable(editable);
     }
+    @Nullable Boolean scrollable = isScrollable();
     if (scrollable != null) {
       builder.setScrollable(scrollable);
     }
+    @Nullable Boolean canScrollForward = canScrollForward();
     if (canScrollForward != null) {
       builder.setCanScrollForward(canScrollForward);
     }
+    @Nullable Boolean canScrollBackward = canScrollBackward();
     if (canScrollBackward != null) {
       builder.setCanScrollBackward(canScrollBackward);
     }
+    @Nullable Boolean checkable = isCheckable();
     if (checkable != null) {
       builder.setCheckable(checkable);
     }
+    @Nullable Boolean checked = isChecked();
     if (checked != null) {
       builder.setChecked(checked);
     }
+    @Nullable Boolean hasTouchDelegate = hasTouchDelegate();
     if (hasTouchDelegate != null) {
       builder.setHasTouchDelegate(hasTouchDelegate);
     }
-    builder.setScreenReaderFocusable(isScreenReaderFocusable);
+    builder.setScreenReaderFocusable(isScreenReaderFocusable());
     for (Rect bounds : touchDelegateBounds) {
       builder.addTouchDelegateBounds(bounds.toProto());
     }
+    @Nullable Rect boundsInScreen = getBoundsInScreenIfKnown();
     if (boundsInScreen != null) {
       builder.setBoundsInScreen(boundsInScreen.toProto());
     }
+    @Nullable Integer nonclippedHeight = getNonclippedHeight();
     if (nonclippedHeight != null) {
       builder.setNonclippedHeight(nonclippedHeight);
     }
+    @Nullable Integer nonclippedWidth = getNonclippedWidth();
     if (nonclippedWidth != null) {
       builder.setNonclippedWidth(nonclippedWidth);
     }
+    @Nullable Float textSize = getTextSize();
     if (textSize != null) {
       builder.setTextSize(textSize);
     }
+    @Nullable Integer textSizeUnit = getTextSizeUnit();
     if (textSizeUnit != null) {
       builder.setTextSizeUnit(textSizeUnit);
     }
+    @Nullable Integer textColor = getTextColor();
     if (textColor != null) {
       builder.setTextColor(textColor);
     }
+    @Nullable Integer backgroundDrawableColor = getBackgroundDrawableColor();
     if (backgroundDrawableColor != null) {
       builder.setBackgroundDrawableColor(backgroundDrawableColor);
     }
+    @Nullable Integer typefaceStyle = getTypefaceStyle();
     if (typefaceStyle != null) {
       builder.setTypefaceStyle(typefaceStyle);
     }
-    builder.setEnabled(enabled);
+    builder.setEnabled(isEnabled());
     if (labeledById != null) {
       builder.setLabeledById(labeledById);
     }
@@ -1036,6 +1105,7 @@ public class ViewHierarchyElement {
     if (accessibilityTraversalAfterId != null) {
       builder.setAccessibilityTraversalAfterId(accessibilityTraversalAfterId);
     }
+    @Nullable Integer drawingOrder = getDrawingOrder();
     if (drawingOrder != null) {
       builder.setDrawingOrder(drawingOrder);
     }
@@ -1045,6 +1115,7 @@ public class ViewHierarchyElement {
     if (!TextUtils.isEmpty(hintText)) {
       builder.setHintText(hintText.toProto());
     }
+    @Nullable Integer hintTextColor = getHintTextColor();
     if (hintTextColor != null) {
       builder.setHintTextColor(hintTextColor);
     }
@@ -1059,6 +1130,57 @@ public class ViewHierarchyElement {
     return builder.build();
   }
 
+  /**
+   * Returns a hash of the properties of this element compared by {@link #equals(Object)}, except
+   * for its children.
+   */
+  long computePropertiesHash() {
+    long hash = ContentHashing.SEED;
+    hash = ContentHashing.mix(hash, getCondensedUniqueId());
+    hash = ContentHashing.mix(hash, getChildViewCount());
+    hash = ContentHashing.mixText(hash, getPackageName());
+    hash = ContentHashing.mixText(hash, getClassName());
+    hash = ContentHashing.mixText(hash, getResourceName());
+    hash = ContentHashing.mixText(hash, getTestTag());
+    hash = ContentHashing.mix(hash, isImportantForAccessibility());
+    hash = ContentHashing.mixText(hash, getContentDescription());
+    hash = ContentHashing.mixText(hash, getText());
+    hash = ContentHashing.mixText(hash, getStateDescription());
+    hash = ContentHashing.mix(hash, getTextColor());
+    hash = ContentHashing.mix(hash, getBackgroundDrawableColor());
+    hash = ContentHashing.mix(hash, isVisibleToUser());
+    hash = ContentHashing.mix(hash, isClickable());
+    hash = ContentHashing.mix(hash, isLongClickable());
+    hash = ContentHashing.mix(hash, isFocusable());
+    hash = ContentHashing.mix(hash, isEditable());
+    hash = ContentHashing.mix(hash, isScrollable());
+    hash = ContentHashing.mix(hash, canScrollForward());
+    hash = ContentHashing.mix(hash, canScrollBackward());
+    hash = ContentHashing.mix(hash, isCheckable());
+    hash = ContentHashing.mix(hash, isChecked());
+    hash = ContentHashing.mix(hash, hasTouchDelegate());
+    hash = ContentHashing.mix(hash, isScreenReaderFocusable());
+    hash = ContentHashing.mix(hash, getTouchDelegateBounds());
+    hash = ContentHashing.mix(hash, getBoundsInScreen());
+    hash = ContentHashing.mix(hash, getNonclippedWidth());
+    hash = ContentHashing.mix(hash, getNonclippedHeight());
+    hash = ContentHashing.mix(hash, getTextSize());
+    hash = ContentHashing.mix(hash, getTextSizeUnit());
+    hash = ContentHashing.mix(hash, getTypefaceStyle());
+    hash = ContentHashing.mix(hash, isEnabled());
+    // Related elements are compared by their condensed unique ids.
+    hash = ContentHashing.mix(hash, labeledById);
+    hash = ContentHashing.mixText(hash, getAccessibilityClassName());
+    hash = ContentHashing.mix(hash, accessibilityTraversalAfterId);
+    hash = ContentHashing.mix(hash, accessibilityTraversalBeforeId);
+    hash = ContentHashing.mix(hash, getDrawingOrder());
+    hash = ContentHashing.mix(hash, getLayoutParams());
+    hash = ContentHashing.mixText(hash, getHintText());
+    hash = ContentHashing.mix(hash, getHintTextColor());
+    hash = ContentHashing.mix(hash, getTextCharacterLocations());
+    return hash;
+  }
+
   /** Set the containing {@link WindowHierarchyElement} of this view. */
   void setWindow(WindowHierarchyElement window) {
     this.windowElement = window;
@@ -1139,7 +1261,22 @@ public class ViewHierarchyElement {
   private boolean propertiesEquals(ViewHierarchyElement element) {
     return (getCondensedUniqueId() == element.getCondensedUniqueId())
         && (getChildViewCount() == element.getChildViewCount())
-        && TextUtils.equals(getPackageName(), element.getPackageName())
+        && attributesEqual(element)
+        && condensedUniqueIdEquals(getLabeledBy(), element.getLabeledBy())
+        && condensedUniqueIdEquals(
+            getAccessibilityTraversalAfter(), element.getAccessibilityTraversalAfter())
+        && condensedUniqueIdEquals(
+            getAccessibilityTraversalBefore(), element.getAccessibilityTraversalBefore());
+  }
+
+  /**
+   * Returns {@code true} if the properties of this element which describe the element itself are
+   * equal to those of {@code element}. Unlike {@link #equals(Object)}, this ignores the identity of
+   * the elements, their children and their relationships to other elements, so it can compare
+   * elements from different hierarchies.
+   */
+  boolean attributesEqual(ViewHierarchyElement element) {
+    return TextUtils.equals(getPackageName(), element.getPackageName())
         && TextUtils.equals(getClassName(), element.getClassName())
         && TextUtils.equals(getResourceName(), element.getResourceName())
         && TextUtils.equals(getTestTag(), element.getTestTag())
@@ -1169,12 +1306,7 @@ public class ViewHierarchyElement {
         && Objects.equals(getTextSizeUnit(), element.getTextSizeUnit())
         && Objects.equals(getTypefaceStyle(), element.getTypefaceStyle())
         && (isEnabled() == element.isEnabled())
-        && condensedUniqueIdEquals(getLabeledBy(), element.getLabeledBy())
         && TextUtils.equals(getAccessibilityClassName(), element.getAccessibilityClassName())
-        && condensedUniqueIdEquals(
-            getAccessibilityTraversalAfter(), element.getAccessibilityTraversalAfter())
-        && condensedUniqueIdEquals(
-            getAccessibilityTraversalBefore(), element.getAccessibilityTraversalBefore())
         && Objects.equals(getDrawingOrder(), element.getDrawingOrder())
         && Objects.equals(getLayoutParams(), element.getLayoutParams())
         && TextUtils.equals(getHintText(), element.getHintText())
@@ -37,7 +37,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
@@ -204,17 +203,12 @@ public class ViewHierarchyElementAndroid extends ViewHierarchyElement {
 
   /**
    * @return an unmodifiable {@link List} containing this {@link ViewHierarchyElementAndroid} and
-   *     any descendants, direct or indirect, in depth-first ordering.
+   *     any descendants, direct or indirect, in depth-first ordering. The list is a view of a slice
+   *     of the window's pre-order, so obtaining it takes constant time.
    */
   @Override
   public List<ViewHierarchyElementAndroid> getSelfAndAllDescendants() {
-    List<ViewHierarchyElementAndroid> listToPopulate = new ArrayList<>();
-    listToPopulate.add(this);
-    for (int i = 0; i < getChildViewCount(); ++i) {
-      listToPopulate.addAll(getChildView(i).getSelfAndAllDescendants());
-    }
-
-    return Collections.unmodifiableList(listToPopulate);
+    return getWindow().getViewTreeIndex().getSubtree(id, getWindow().getAllViews());
   }
 
   /** Returns the containing {@link WindowHierarchyElementAndroid} of this view. */
@@ -0,0 +1,170 @@
+package com.google.android.apps.common.testing.accessibility.framework.uielement;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The shape of the tree of views in a {@link WindowHierarchyElement}: the parent of each view,
+ * indexed by the view's {@link ViewHierarchyElement#getId() id}, and a numbering of the views in
+ * depth-first pre-order. The descendants of each view then occupy a contiguous range of positions
+ * following its own, so a subtree is a slice of the pre-order and an ancestor test compares two
+ * intervals.
+ *
+ * <p>Instances are immutable, and are obtained from {@link
+ * WindowHierarchyElement#getViewTreeIndex()}.
+ */
+public final class ViewTreeIndex {
+
+  /** The value of {@link #getParentId(int)} for a root view. */
+  public static final int NO_PARENT = -1;
+
+  private final int size;
+
+  private final int[] parentIds;
+
+  /** The ids of the views in depth-first pre-order. */
+  private final int[] preorderIds;
+
+  /** The position of each view in {@link #preorderIds}. */
+  private final int[] preorderIndices;
+
+  /** The position in {@link #preorderIds} just after the last descendant of each view. */
+  private final int[] subtreeEnds;
+
+  /**
+   * @param views the views of a window, in which each view's position is equal to its id
+   */
+  ViewTreeIndex(List<? extends ViewHierarchyElement> views) {
+    size = views.size();
+    parentIds = new int[size];
+    preorderIds = new int[size];
+    preorderIndices = new int[size];
+    subtreeEnds = new int[size];
+    for (int id = 0; id < size; id++) {
+      @Nullable Integer parentId = views.get(id).parentId;
+      parentIds[id] = (parentId != null) ? parentId : NO_PARENT;
+    }
+    numberInPreorder(views);
+  }
+
+  /**
+   * Assigns pre-order positions by traversing from each root view. The traversal visits children in
+   * the same order as {@link ViewHierarchyElement#getChildView(int)}.
+   */
+  private void numberInPreorder(List<? extends ViewHierarchyElement> views) {
+    int[] traversalParents = new int[size];
+    BitSet visited = new BitSet(size);
+    Deque<Integer> stack = new ArrayDeque<>();
+    int position = 0;
+    // Roots are normally only views without a parent, but any view left unvisited because of an
+    // inconsistent hierarchy is treated as a root so that every view is numbered.
+    for (int pass = 0; pass < 2; pass++) {
+      for (int root = 0; root < size; root++) {
+        if (visited.get(root) || ((pass == 0) && (parentIds[root] != NO_PARENT))) {
+          continue;
+        }
+        visited.set(root);
+        traversalParents[root] = NO_PARENT;
+        stack.push(root);
+        while (!stack.isEmpty()) {
+          int id = stack.pop();
+          preorderIds[position] = id;
+          preorderIndices[id] = position;
+          subtreeEnds[id] = ++position;
+          List<Integer> childIds = views.get(id).childIds;
+          if (childIds != null) {
+            for (int i = childIds.size() - 1; i >= 0; i--) {
+              int childId = childIds.get(i);
+              if ((childId >= 0) && (childId < size) && !visited.get(childId)) {
+                visited.set(childId);
+                traversalParents[childId] = id;
+                stack.push(childId);
+              }
+            }
+          }
+        }
+      }
+    }
+
+    // Each subtree ends where the subtree of its last descendant in pre-order ends.
+    for (int i = size - 1; i >= 0; i--) {
+      int id = preorderIds[i];
+      int parent = traversalParents[id];
+      if ((parent != NO_PARENT) && (subtreeEnds[id] > subtreeEnds[parent])) {
+        subtreeEnds[parent] = subtreeEnds[id];
+      }
+    }
+  }
+
+  /** Returns the number of views in the window. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the id of the parent of a view, or {@link #NO_PARENT} if it is a root view. */
+  public int getParentId(int id) {
+    return parentIds[id];
+  }
+
+  /** Returns the position of a view in depth-first pre-order. */
+  public int getPreorderIndex(int id) {
+    return preorderIndices[id];
+  }
+
+  /**
+   * Returns the pre-order position just after the last descendant of a view. The view and its
+   * descendants occupy the positions from {@link #getPreorderIndex(int)} up to this one.
+   */
+  public int getSubtreeEnd(int id) {
+    return subtreeEnds[id];
+  }
+
+  /** Returns the id of the view at a position in depth-first pre-order. */
+  public int getIdAtPreorderIndex(int preorderIndex) {
+    return preorderIds[preorderIndex];
+  }
+
+  /** Returns the number of views in the subtree rooted at a view, including the view itself. */
+  public int getSubtreeSize(int id) {
+    return subtreeEnds[id] - preorderIndices[id];
+  }
+
+  /**
+   * Returns {@code true} if {@code descendantId} identifies the view {@code ancestorId} or one of
+   * its descendants. This takes constant time.
+   */
+  public boolean isSelfOrDescendant(int ancestorId, int descendantId) {
+    int index = preorderIndices[descendantId];
+    return (index >= preorderIndices[ancestorId]) && (index < subtreeEnds[ancestorId]);
+  }
+
+  /**
+   * Returns an unmodifiable view of the subtree rooted at a view, in depth-first pre-order.
+   *
+   * @param id the id of the root of the subtree
+   * @param views the views of the window from which this index was built
+   */
+  <T extends ViewHierarchyElement> List<T> getSubtree(int id, List<T> views) {
+    int start = preorderIndices[id];
+    int end = subtreeEnds[id];
+    return new AbstractList<T>() {
+      @Override
+      public T get(int index) {
+        if ((index < 0) || (index >= end - start)) {
+          throw new IndexOutOfBoundsException(
+              "index " + index + " out of range [0, " + (end - start) + ")");
+        }
+        return views.get(preorderIds[start + index]);
+      }
+
+      @Override
+      public int size() {
+        return end - start;
+      }
+    };
+  }
+}
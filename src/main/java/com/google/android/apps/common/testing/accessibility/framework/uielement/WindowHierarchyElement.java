@@ -51,6 +51,15 @@ public class WindowHierarchyElement {
   // This field is set to a non-null value after construction.
   private @MonotonicNonNull AccessibilityHierarchy accessibilityHierarchy;
 
+  // Built on first use. Building is deterministic, so a race between threads only duplicates work.
+  private volatile @Nullable ViewTreeIndex viewTreeIndex;
+
+  // The content hash of each view, by id. Computed on first use, like viewTreeIndex.
+  private volatile long @Nullable [] viewContentHashes;
+
+  // A spatial index of the bounds of the views. Built on first use, like viewTreeIndex.
+  private volatile @Nullable ViewBoundsIndex viewBoundsIndex;
+
   protected final @Nullable Integer windowId;
   protected final @Nullable Integer layer;
   protected final @Nullable Integer type;
@@ -100,10 +109,12 @@ public class WindowHierarchyElement {
     this.boundsInScreen = proto.hasBoundsInScreen() ? new Rect(proto.getBoundsInScreen()) : null;
 
     // Window contents
+    // The frequently read primitive properties of the views are held in columns shared by them all.
     int totalNodes = proto.getViewsCount();
     this.viewHierarchyElements = new ArrayList<>(totalNodes);
+    ViewHierarchyColumns columns = new ViewHierarchyColumns(proto.getViewsList());
     for (ViewHierarchyElementProto view : proto.getViewsList()) {
-      viewHierarchyElements.add(new ViewHierarchyElement(view));
+      viewHierarchyElements.add(new ColumnarViewHierarchyElement(view, columns));
     }
   }
 
@@ -137,6 +148,82 @@ public class WindowHierarchyElement {
     return Collections.unmodifiableList(viewHierarchyElements);
   }
 
+  /**
+   * Returns the parent and depth-first pre-order position of every view in this window, which
+   * answer subtree and ancestor queries in constant time.
+   */
+  public ViewTreeIndex getViewTreeIndex() {
+    ViewTreeIndex treeIndex = viewTreeIndex;
+    if (treeIndex == null) {
+      treeIndex = new ViewTreeIndex(getAllViews());
+      viewTreeIndex = treeIndex;
+    }
+    return treeIndex;
+  }
+
+  /**
+   * Returns a spatial index of the views in this window, for finding the views which intersect or
+   * lie nearest to a region of the screen without testing every view.
+   */
+  public ViewBoundsIndex getViewBoundsIndex() {
+    ViewBoundsIndex index = viewBoundsIndex;
+    if (index == null) {
+      index = new ViewBoundsIndex(getAllViews());
+      viewBoundsIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * Returns a 64-bit hash of the content of this window: its type, bounds and the content hashes of
+   * its root views. Windows with different content hashes differ in content.
+   *
+   * @see ViewHierarchyElement#getContentHash()
+   */
+  public long getContentHash() {
+    long hash = ContentHashing.SEED;
+    hash = ContentHashing.mix(hash, getId());
+    hash = ContentHashing.mix(hash, getType());
+    hash = ContentHashing.mix(hash, getBoundsInScreen());
+    ViewTreeIndex treeIndex = getViewTreeIndex();
+    for (int id = 0; id < treeIndex.size(); id++) {
+      if (treeIndex.getParentId(id) == ViewTreeIndex.NO_PARENT) {
+        hash = ContentHashing.mix(hash, getViewContentHash(id));
+      }
+    }
+    return ContentHashing.finish(hash);
+  }
+
+  /** Returns the content hash of the view with the given id in this window. */
+  long getViewContentHash(int viewId) {
+    long[] hashes = viewContentHashes;
+    if (hashes == null) {
+      hashes = computeViewContentHashes();
+      viewContentHashes = hashes;
+    }
+    return hashes[viewId];
+  }
+
+  /**
+   * Computes the content hash of every view bottom-up, visiting views in reverse pre-order so that
+   * each view's children are hashed before it.
+   */
+  private long[] computeViewContentHashes() {
+    List<? extends ViewHierarchyElement> views = getAllViews();
+    ViewTreeIndex treeIndex = getViewTreeIndex();
+    long[] hashes = new long[views.size()];
+    for (int i = views.size() - 1; i >= 0; i--) {
+      int viewId = treeIndex.getIdAtPreorderIndex(i);
+      ViewHierarchyElement view = views.get(viewId);
+      long hash = view.computePropertiesHash();
+      for (int child = 0; child < view.getChildViewCount(); child++) {
+        hash = ContentHashing.mix(hash, hashes[view.getChildView(child).getId()]);
+      }
+      hashes[viewId] = ContentHashing.finish(hash);
+    }
+    return hashes;
+  }
+
   /**
    * See {@link android.view.accessibility.AccessibilityWindowInfo#getParent()}.
    *
@@ -0,0 +1,111 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Implementation of an {@link Image} backed by an array of packed ARGB ints. Unlike {@link
+ * BitmapImage}, this does not depend upon an Android runtime, so archived screenshots can be
+ * evaluated on a plain JVM.
+ *
+ * <p>Crops are views that share the backing array, so cropping is O(1) and never copies pixels.
+ */
+public final class ArgbImage implements DirectRowImage {
+
+  private final int[] pixels;
+  private final int offset;
+  private final int stride;
+  private final int width;
+  private final int height;
+
+  /**
+   * Creates an image which uses {@code pixels} directly, without copying it.
+   *
+   * @param pixels packed ARGB pixels in row-major order, with no padding between rows
+   * @param width the width of the image
+   * @param height the height of the image
+   */
+  public ArgbImage(int[] pixels, int width, int height) {
+    this(pixels, /* offset= */ 0, /* stride= */ width, width, height);
+    checkArgument(width >= 0, "width must be >= 0");
+    checkArgument(height >= 0, "height must be >= 0");
+    checkArgument(
+        pixels.length >= (long) width * height, "pixels must hold at least width * height values");
+  }
+
+  private ArgbImage(int[] pixels, int offset, int stride, int width, int height) {
+    this.pixels = pixels;
+    this.offset = offset;
+    this.stride = stride;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Decodes a PNG image. Non-interlaced images with 8-bit samples in any color type are supported,
+   * which covers the screenshots captured by Android devices.
+   *
+   * @param in the stream from which to read the PNG data. The stream is not closed.
+   * @throws IOException if the stream cannot be read, or does not contain a supported PNG image
+   */
+  public static ArgbImage fromPng(InputStream in) throws IOException {
+    return new PngDecoder(in).decode();
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public ArgbImage crop(int left, int top, int width, int height) {
+    checkArgument(left >= 0, "left must be >= 0");
+    checkArgument(top >= 0, "top must be >= 0");
+    checkArgument(width > 0, "width must be > 0");
+    checkArgument(height > 0, "height must be > 0");
+    checkArgument(left + width <= this.width);
+    checkArgument(top + height <= this.height);
+    return new ArgbImage(pixels, offset + (top * stride) + left, stride, width, height);
+  }
+
+  @Override
+  public int[] getPixels() {
+    if ((offset == 0) && (stride == width)) {
+      return Arrays.copyOf(pixels, width * height);
+    }
+    int[] result = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      readRow(y, result, y * width);
+    }
+    return result;
+  }
+
+  @Override
+  public void readRow(int y, int[] dst, int offset) {
+    checkElementIndex(y, height, "y");
+    System.arraycopy(pixels, this.offset + (y * stride), dst, offset, width);
+  }
+
+  /** Returns the packed ARGB color of the pixel at the given coordinates within this image. */
+  public int getPixel(int x, int y) {
+    checkElementIndex(x, width, "x");
+    checkElementIndex(y, height, "y");
+    return pixels[offset + (y * stride) + x];
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "{ArgbImage left=%d top=%d width=%d height=%d}",
+        (stride == 0) ? 0 : offset % stride, (stride == 0) ? 0 : offset / stride, width, height);
+  }
+}
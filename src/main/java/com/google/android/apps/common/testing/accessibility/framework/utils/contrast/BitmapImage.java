@@ -1,13 +1,14 @@
 package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
 
 import android.graphics.Bitmap;
 
 /**
  * Implementation of an {@link Image} using {@link Bitmap}. This depends upon an Android runtime.
  */
-public final class BitmapImage implements Image {
+public final class BitmapImage implements DirectRowImage {
 
   private final Bitmap bitmap;
   private final int left;
@@ -56,6 +57,12 @@ public final class BitmapImage implements Image {
     return pixels;
   }
 
+  @Override
+  public void readRow(int y, int[] dst, int offset) {
+    checkElementIndex(y, height, "y");
+    bitmap.getPixels(dst, offset, /* stride= */ width, /* x= */ left, /* y= */ top + y, width, 1);
+  }
+
   /** Creates a Bitmap from this BitmapImage. */
   public Bitmap getBitmap() {
     return Bitmap.createBitmap(bitmap, /* x= */ left, /* y= */ top, width, height);
@@ -0,0 +1,290 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The set of colors from an image, and the count (number of pixels) associated with each color.
+ *
+ * <p>Colors are stored in a primitive open-addressing table that maps each color to a dense index,
+ * so counting the pixels of an image is a single linear pass with no sorting of the pixel data and
+ * no boxing. Entries are iterated by dense index, which is the order in which colors were first
+ * added unless {@link #sortByColor()} has been called.
+ */
+final class ColorHistogram {
+
+  private static final int MIN_TABLE_CAPACITY = 16;
+
+  /** Multiplicative hashing constant (2^32 / golden ratio). */
+  private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+  /** Distinct colors, in iteration order. */
+  private int[] colors;
+
+  /** Pixel counts, parallel to {@link #colors}. */
+  private int[] counts;
+
+  private int size;
+
+  /**
+   * Luminance of each color, parallel to {@link #colors}. Computed on first use and discarded when
+   * colors are added or reordered.
+   */
+  private double @Nullable [] luminances;
+
+  /**
+   * Open-addressing table with linear probing. Each slot holds a dense index plus one, with zero
+   * marking an empty slot. Colors themselves cannot be used as sentinels because every int is a
+   * valid color.
+   */
+  private int[] table;
+
+  private int shift;
+
+  /** Constructs an empty histogram. */
+  ColorHistogram() {
+    this(MIN_TABLE_CAPACITY / 2);
+  }
+
+  /**
+   * Constructs an empty histogram sized to hold {@code expectedColors} distinct colors without
+   * resizing.
+   */
+  ColorHistogram(int expectedColors) {
+    checkArgument(expectedColors >= 0, "expectedColors must be >= 0");
+    int capacity = Math.max(expectedColors, 1);
+    colors = new int[capacity];
+    counts = new int[capacity];
+    allocateTable(tableCapacityFor(capacity));
+  }
+
+  /**
+   * Builds a histogram from the pixels of an image whose coordinates are both multiples of {@code
+   * stride}, with colors in ascending numeric order. A stride of {@code 1} includes every pixel. The
+   * image is read a row at a time through an {@link ImageRowReader}.
+   */
+  static ColorHistogram fromImage(Image image, int stride) {
+    checkArgument(stride > 0, "stride must be > 0");
+    int width = image.getWidth();
+    int height = image.getHeight();
+    ColorHistogram histogram = new ColorHistogram();
+    if ((width > 0) && (height > 0)) {
+      ImageRowReader rows = new ImageRowReader(image);
+      int[] row = new int[width];
+      for (int y = 0; y < height; y += stride) {
+        rows.readRow(y, row, 0);
+        int sampledWidth = width;
+        if (stride > 1) {
+          // Compact the sampled columns to the start of the row.
+          sampledWidth = 0;
+          for (int x = 0; x < width; x += stride) {
+            row[sampledWidth++] = row[x];
+          }
+        }
+        histogram.addAll(row, 0, sampledWidth);
+      }
+    }
+    histogram.sortByColor();
+    return histogram;
+  }
+
+  /** Adds one pixel of the given color. */
+  void add(int color) {
+    add(color, 1);
+  }
+
+  /** Adds {@code count} pixels of the given color. */
+  void add(int color, int count) {
+    int mask = table.length - 1;
+    int slot = hash(color);
+    while (true) {
+      int entry = table[slot];
+      if (entry == 0) {
+        break;
+      }
+      if (colors[entry - 1] == color) {
+        counts[entry - 1] += count;
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    // New color
+    luminances = null;
+    if (size == colors.length) {
+      colors = Arrays.copyOf(colors, size * 2);
+      counts = Arrays.copyOf(counts, size * 2);
+    }
+    colors[size] = color;
+    counts[size] = count;
+    size++;
+    if (size * 2 > table.length) {
+      allocateTable(table.length * 2);
+      rehash();
+    } else {
+      table[slot] = size;
+    }
+  }
+
+  /** Adds {@code length} pixels from {@code pixels}, starting at {@code offset}. */
+  void addAll(int[] pixels, int offset, int length) {
+    if (length == 0) {
+      return;
+    }
+
+    // Runs of identical pixels are common in screenshots, so they are counted before probing.
+    int end = offset + length;
+    int runColor = pixels[offset];
+    int runLength = 1;
+    for (int i = offset + 1; i < end; i++) {
+      int color = pixels[i];
+      if (color == runColor) {
+        runLength++;
+      } else {
+        add(runColor, runLength);
+        runColor = color;
+        runLength = 1;
+      }
+    }
+    add(runColor, runLength);
+  }
+
+  /** Removes all colors, keeping the allocated capacity for reuse. */
+  void clear() {
+    Arrays.fill(table, 0);
+    size = 0;
+    luminances = null;
+  }
+
+  /** Returns the number of distinct colors. */
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the color at the given position in iteration order. */
+  int getColorAt(int index) {
+    checkIndex(index);
+    return colors[index];
+  }
+
+  /** Returns the count of the color at the given position in iteration order. */
+  int getCountAt(int index) {
+    checkIndex(index);
+    return counts[index];
+  }
+
+  /** Returns the luminance of the color at the given position in iteration order. */
+  double getLuminanceAt(int index) {
+    checkIndex(index);
+    return getLuminances()[index];
+  }
+
+  /** Returns the number of pixels with the given color, or {@code 0} if the color is absent. */
+  int getCount(int color) {
+    int index = indexOf(color);
+    return (index < 0) ? 0 : counts[index];
+  }
+
+  /** Returns the position of the given color in iteration order, or {@code -1} if absent. */
+  int indexOf(int color) {
+    int mask = table.length - 1;
+    int slot = hash(color);
+    while (true) {
+      int entry = table[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      if (colors[entry - 1] == color) {
+        return entry - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Reorders the entries so that colors are iterated in ascending numeric (signed int) order. Only
+   * the distinct colors are sorted, never the pixel data.
+   */
+  void sortByColor() {
+    // Pack each color with its count's current position, so a primitive sort orders by color.
+    long[] packed = new long[size];
+    for (int i = 0; i < size; i++) {
+      packed[i] = ((long) colors[i] << 32) | i;
+    }
+    Arrays.sort(packed);
+    int[] sortedCounts = new int[colors.length];
+    for (int i = 0; i < size; i++) {
+      sortedCounts[i] = counts[(int) packed[i]];
+      colors[i] = (int) (packed[i] >> 32);
+    }
+    counts = sortedCounts;
+    luminances = null;
+    rehash();
+  }
+
+  /**
+   * Finds the average luminance value within the set of colors for purposes of splitting colors
+   * into high-luminance and low-luminance buckets. This is explicitly not a weighted average.
+   */
+  double calculateAverageLuminance() {
+    double[] colorLuminances = getLuminances();
+    double luminanceSum = 0;
+    for (int i = 0; i < size; i++) {
+      luminanceSum += colorLuminances[i];
+    }
+    return luminanceSum / size;
+  }
+
+  /** Returns the luminance of each color, computing them in one batch when first needed. */
+  private double[] getLuminances() {
+    double[] result = luminances;
+    if (result == null) {
+      result = new double[size];
+      ContrastUtils.calculateLuminances(colors, size, result);
+      luminances = result;
+    }
+    return result;
+  }
+
+  private int hash(int color) {
+    return (color * HASH_MULTIPLIER) >>> shift;
+  }
+
+  private void allocateTable(int capacity) {
+    table = new int[capacity];
+    shift = Integer.numberOfLeadingZeros(capacity) + 1;
+  }
+
+  private void rehash() {
+    Arrays.fill(table, 0);
+    int mask = table.length - 1;
+    for (int i = 0; i < size; i++) {
+      int slot = hash(colors[i]);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      table[slot] = i + 1;
+    }
+  }
+
+  private void checkIndex(int index) {
+    if ((index < 0) || (index >= size)) {
+      throw new IndexOutOfBoundsException("index " + index + " out of range [0, " + size + ")");
+    }
+  }
+
+  /** Returns a power-of-two table capacity that keeps the load factor at or below one half. */
+  private static int tableCapacityFor(int expectedColors) {
+    int capacity = MIN_TABLE_CAPACITY;
+    while (capacity < expectedColors * 2) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+}
@@ -16,19 +16,16 @@
 
 package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
-import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** Represents a section of a screenshot bitmap and its associated color and contrast data. */
 public class ContrastSwatch {
@@ -41,8 +38,13 @@ public class ContrastSwatch {
 
   private static final double COLOR_CUTOFF_PERCENTAGE = 0.01;
 
+  /** A pixel budget which causes every pixel of an image to be analyzed. */
+  public static final int UNLIMITED_PIXEL_BUDGET = Integer.MAX_VALUE;
+
   private final SeparatedColors separatedColors;
 
+  private final int samplingStride;
+
   /**
    * Constructs a ContrastSwatch, also extracting certain properties from the bitmap related to
    * contrast and luminance.
@@ -54,17 +56,73 @@ public class ContrastSwatch {
    * @param multipleForegroundColors if multiple foreground colors should be identified
    */
   public ContrastSwatch(Image image, boolean multipleForegroundColors) {
-    separatedColors = processSwatch(image, multipleForegroundColors);
+    this(image, multipleForegroundColors, UNLIMITED_PIXEL_BUDGET);
+  }
+
+  /**
+   * Constructs a ContrastSwatch from at most {@code pixelBudget} pixels of the image. Larger images
+   * are sampled on a uniform grid, taking every pixel whose coordinates are both multiples of the
+   * smallest stride that fits the budget. This bounds the cost of analyzing very large images.
+   *
+   * <p>Sampling changes only how many pixels of each color are counted, never the colors
+   * themselves. Every reported color is present in the image, and every reported contrast ratio is
+   * exact for the colors it relates. The worst case is that sampling selects different colors than
+   * a full analysis would. In particular, foreground details narrower than {@link
+   * #getSamplingStride()} pixels may be missed entirely, in which case the reported contrast ratio
+   * may be anywhere from 1 to that of the true foreground. Callers should therefore reserve
+   * sampling for images whose salient details are large relative to the stride.
+   *
+   * @param image {@link Image} to be evaluated
+   * @param multipleForegroundColors if multiple foreground colors should be identified
+   * @param pixelBudget the maximum number of pixels to analyze, or {@link #UNLIMITED_PIXEL_BUDGET}
+   * @throws IllegalArgumentException if {@code pixelBudget} is not positive
+   */
+  public ContrastSwatch(Image image, boolean multipleForegroundColors, int pixelBudget) {
+    checkArgument(pixelBudget > 0, "pixelBudget must be > 0");
+    samplingStride = calculateSamplingStride(image.getWidth(), image.getHeight(), pixelBudget);
+    separatedColors = processSwatch(image, multipleForegroundColors, samplingStride);
+  }
+
+  /**
+   * Constructs a ContrastSwatch from a histogram which has already been computed.
+   *
+   * @param colorHistogram the colors of the image and their counts, in ascending color order
+   * @param imageSize total number of pixels in the image
+   * @param multipleForegroundColors if multiple foreground colors should be identified
+   */
+  ContrastSwatch(ColorHistogram colorHistogram, int imageSize, boolean multipleForegroundColors) {
+    samplingStride = 1;
+    separatedColors = separateColors(colorHistogram, imageSize, multipleForegroundColors);
   }
 
   /** Compute the background and foreground colors and luminance for the image. */
-  private static SeparatedColors processSwatch(Image image, boolean multipleForegroundColors) {
-    int[] pixels = image.getPixels();
-    ColorHistogram colorHistogram = new ColorHistogram(pixels);
-    int imageSize = pixels.length;
+  private static SeparatedColors processSwatch(
+      Image image, boolean multipleForegroundColors, int samplingStride) {
+    ColorHistogram colorHistogram = ColorHistogram.fromImage(image, samplingStride);
+    int imageSize =
+        sampledLength(image.getWidth(), samplingStride)
+            * sampledLength(image.getHeight(), samplingStride);
     return separateColors(colorHistogram, imageSize, multipleForegroundColors);
   }
 
+  /** Returns the smallest stride for which a grid sample of the image fits within the budget. */
+  private static int calculateSamplingStride(int width, int height, int pixelBudget) {
+    long imageSize = (long) width * height;
+    if (imageSize <= pixelBudget) {
+      return 1;
+    }
+    int stride = Math.max(1, (int) Math.ceil(Math.sqrt((double) imageSize / pixelBudget)));
+    while ((long) sampledLength(width, stride) * sampledLength(height, stride) > pixelBudget) {
+      stride++;
+    }
+    return stride;
+  }
+
+  /** Returns the number of coordinates in {@code [0, length)} which are multiples of stride. */
+  private static int sampledLength(int length, int stride) {
+    return (length + stride - 1) / stride;
+  }
+
   /**
    * Separates the colors in the color histogram into foreground and background colors, and computes
    * luminance values.
@@ -73,14 +131,14 @@ public class ContrastSwatch {
    */
   private static SeparatedColors separateColors(
       ColorHistogram colorHistogram, int imageSize, boolean multipleForegroundColors) {
-    if (colorHistogram.getColors().isEmpty()) {
+    if (colorHistogram.isEmpty()) {
       // An empty histogram indicates we've encountered a 0px area image.
       return new SeparatedColors(Color.BLACK);
     }
 
-    if (colorHistogram.getColors().size() == 1) {
+    if (colorHistogram.size() == 1) {
       // Deal with views that only contain a single color
-      int singleColor = colorHistogram.getColors().iterator().next();
+      int singleColor = colorHistogram.getColorAt(0);
       return new SeparatedColors(singleColor);
     }
 
@@ -103,24 +161,32 @@ public class ContrastSwatch {
 
     // Treat as single color image if cannot find a second dominant color.
 
-    if (dominantColorHistogram.getColors().size() < 2) {
-      int singleColor = dominantColorHistogram.getColors().iterator().next();
+    if (dominantColorHistogram.size() < 2) {
+      int singleColor = dominantColorHistogram.getColorAt(0);
       return new SeparatedColors(singleColor);
     }
-    // Sort colors with a max heap.
-    final PriorityQueue<Map.Entry<Integer, Integer>> frequencyMaxHeap =
+    // Sort colors with a max heap. The heap holds positions within the dominant color histogram;
+    // there are at most 1 / COLOR_CUTOFF_PERCENTAGE of them.
+    final PriorityQueue<Integer> frequencyMaxHeap =
         new PriorityQueue<>(
-            dominantColorHistogram.getColors().size(), (a, b) -> (b.getValue() - a.getValue()));
-    for (Map.Entry<Integer, Integer> entry : dominantColorHistogram.entrySet()) {
-      frequencyMaxHeap.offer(entry);
+            dominantColorHistogram.size(),
+            (a, b) ->
+                (dominantColorHistogram.getCountAt(b) - dominantColorHistogram.getCountAt(a)));
+    for (int i = 0; i < dominantColorHistogram.size(); i++) {
+      frequencyMaxHeap.offer(i);
     }
     // The color with the most numbers of pixels is considered the background.
-    int backgroundColor = checkNotNull(frequencyMaxHeap.poll()).getKey();
+    int backgroundPosition = checkNotNull(frequencyMaxHeap.poll());
+    int backgroundColor = dominantColorHistogram.getColorAt(backgroundPosition);
 
     // The other dominant colors are considered as the foregrounds.
     List<Integer> foregroundColors =
         extractDominantForegroundColors(
-            backgroundColor, frequencyMaxHeap, averageLuminance, imageSize);
+            backgroundPosition,
+            dominantColorHistogram,
+            frequencyMaxHeap,
+            averageLuminance,
+            imageSize);
 
     // Treat as single color image if cannot find a second dominant color that has opposite
     // luminance or covers enough area of the image.
@@ -139,10 +205,10 @@ public class ContrastSwatch {
     int highLuminanceColor = -1;
     int maxLowLuminanceFrequency = 0;
     int maxHighLuminanceFrequency = 0;
-    for (Map.Entry<Integer, Integer> entry : colorHistogram.entrySet()) {
-      final int color = entry.getKey();
-      final double luminanceValue = ContrastUtils.calculateLuminance(color);
-      final int frequency = entry.getValue();
+    for (int i = 0; i < colorHistogram.size(); i++) {
+      final int color = colorHistogram.getColorAt(i);
+      final double luminanceValue = colorHistogram.getLuminanceAt(i);
+      final int frequency = colorHistogram.getCountAt(i);
       if ((luminanceValue < averageLuminance) && (frequency > maxLowLuminanceFrequency)) {
         maxLowLuminanceFrequency = frequency;
         lowLuminanceColor = color;
@@ -175,66 +241,97 @@ public class ContrastSwatch {
    */
   private static ColorHistogram reduceColors(
       ColorHistogram colorHistogram, int imageSize, double cutoff) {
-    Map<Integer, Integer> dominantColorHistogram = new HashMap<>();
-    ArrayList<Map.Entry<Integer, Integer>> dominantColorsList = new ArrayList<>();
-
-    // Remove noises and maintain iteration order
-    for (Map.Entry<Integer, Integer> entry : colorHistogram.entrySet()) {
-      if (entry.getValue() >= imageSize * cutoff) {
-        dominantColorsList.add(entry);
+    // Remove noises and maintain iteration order. Each retained entry is packed as
+    // (Integer.MAX_VALUE - count, position), so a primitive sort orders by descending count while
+    // keeping equal counts in their original order.
+    long[] dominantColorsList = new long[colorHistogram.size()];
+    int dominantColorsCount = 0;
+    for (int i = 0; i < colorHistogram.size(); i++) {
+      int count = colorHistogram.getCountAt(i);
+      if (count >= imageSize * cutoff) {
+        dominantColorsList[dominantColorsCount++] = ((long) (Integer.MAX_VALUE - count) << 32) | i;
       }
     }
-    Collections.sort(dominantColorsList, (a, b) -> (b.getValue() - a.getValue()));
-
-    // Combine similar colors
-    for (Map.Entry<Integer, Integer> entry : dominantColorsList) {
-      int color = entry.getKey();
-      int colorCount = entry.getValue();
-      for (int dominantColor : dominantColorHistogram.keySet()) {
-        if (ContrastUtils.colorDifference(dominantColor, entry.getKey()) < COLOR_DIFFERENCE_LIMIT) {
+    Arrays.sort(dominantColorsList, 0, dominantColorsCount);
+
+    // Combine similar colors. Only colors above the cutoff reach this map, so it holds at most
+    // 1 / cutoff entries. Its iteration order determines which similar color absorbs another.
+    Map<Integer, Integer> dominantColorHistogram = new HashMap<>();
+    for (int i = 0; i < dominantColorsCount; i++) {
+      int position = (int) dominantColorsList[i];
+      int entryColor = colorHistogram.getColorAt(position);
+      int color = entryColor;
+      int colorCount = colorHistogram.getCountAt(position);
+      for (Map.Entry<Integer, Integer> dominantEntry : dominantColorHistogram.entrySet()) {
+        int dominantColor = dominantEntry.getKey();
+        if (ContrastUtils.colorDifference(dominantColor, entryColor) < COLOR_DIFFERENCE_LIMIT) {
           color = dominantColor;
-          colorCount += dominantColorHistogram.get(dominantColor);
+          colorCount += dominantEntry.getValue();
           break;
         }
       }
       dominantColorHistogram.put(color, colorCount);
     }
-    return new ColorHistogram(dominantColorHistogram);
+
+    ColorHistogram reducedHistogram = new ColorHistogram(dominantColorHistogram.size());
+    for (Map.Entry<Integer, Integer> entry : dominantColorHistogram.entrySet()) {
+      reducedHistogram.add(entry.getKey(), entry.getValue());
+    }
+    return reducedHistogram;
   }
 
   /**
    * Extract dominant foreground colors. Colors that have opposite luminance values are prioritized
    * in the list.
    *
-   * @param frequencyMaxHeap a max heap of all the foreground colors.
+   * @param backgroundPosition the position of the background color within {@code
+   *     dominantColorHistogram}.
+   * @param dominantColorHistogram the histogram of dominant colors.
+   * @param frequencyMaxHeap a max heap of the positions of all the foreground colors within {@code
+   *     dominantColorHistogram}.
    * @param averageLuminance the average Luminance of the image.
    * @param imageSize total number of pixels in the image
    */
   private static List<Integer> extractDominantForegroundColors(
-      int backgroundColor,
-      PriorityQueue<Map.Entry<Integer, Integer>> frequencyMaxHeap,
+      int backgroundPosition,
+      ColorHistogram dominantColorHistogram,
+      PriorityQueue<Integer> frequencyMaxHeap,
       double averageLuminance,
       int imageSize) {
-    double backgroundLuminance = ContrastUtils.calculateLuminance(backgroundColor);
+    double backgroundLuminance = dominantColorHistogram.getLuminanceAt(backgroundPosition);
     boolean backgroundLuminanceBelowAverage = (backgroundLuminance < averageLuminance);
     List<Integer> foregroundColors = new ArrayList<>();
     int priorityIndex = 0;
     while (!frequencyMaxHeap.isEmpty() && (foregroundColors.size() < MAX_FOREGROUND_COLOR)) {
-      Map.Entry<Integer, Integer> entry = frequencyMaxHeap.poll();
-      int newColor = checkNotNull(entry).getKey();
-      double newLuminance = ContrastUtils.calculateLuminance(newColor);
+      int position = checkNotNull(frequencyMaxHeap.poll());
+      int newColor = dominantColorHistogram.getColorAt(position);
+      double newLuminance = dominantColorHistogram.getLuminanceAt(position);
       boolean newLuminanceBelowAverage = newLuminance <= averageLuminance;
       boolean oppositeLuminance = backgroundLuminanceBelowAverage != newLuminanceBelowAverage;
 
       if (oppositeLuminance) {
         foregroundColors.add(priorityIndex++, newColor);
-      } else if (entry.getValue() > imageSize * COLOR_SIGNIFICANCE_PERCENTAGE) {
+      } else if (dominantColorHistogram.getCountAt(position)
+          > imageSize * COLOR_SIGNIFICANCE_PERCENTAGE) {
         foregroundColors.add(newColor);
       }
     }
     return foregroundColors;
   }
 
+  /**
+   * Returns the distance in pixels, both horizontally and vertically, between the pixels which were
+   * analyzed. This is {@code 1} if every pixel of the image was analyzed.
+   */
+  public int getSamplingStride() {
+    return samplingStride;
+  }
+
+  /** Returns {@code true} if only a sample of the image's pixels was analyzed. */
+  public boolean isSampled() {
+    return samplingStride > 1;
+  }
+
   public int getBackgroundColor() {
     return separatedColors.getBackgroundColor();
   }
@@ -248,7 +345,7 @@ public class ContrastSwatch {
   }
 
   public double getBackgroundLuminance() {
-    return ContrastUtils.calculateLuminance(getBackgroundColor());
+    return separatedColors.getBackgroundLuminance();
   }
 
   /**
@@ -256,11 +353,7 @@ public class ContrastSwatch {
    * to the luminance of a color in {@link #getForegroundColors()} with the same index.
    */
   public ImmutableList<Double> getForegroundLuminances() {
-    ImmutableList.Builder<Double> foregroundLuminances = ImmutableList.builder();
-    for (Integer color : getForegroundColors()) {
-      foregroundLuminances.add(ContrastUtils.calculateLuminance(checkNotNull(color)));
-    }
-    return foregroundLuminances.build();
+    return separatedColors.getForegroundLuminances();
   }
 
   /**
@@ -298,6 +391,8 @@ public class ContrastSwatch {
 
     private final int backgroundColor;
     private final ImmutableList<Integer> foregroundColors;
+    private final double backgroundLuminance;
+    private final ImmutableList<Double> foregroundLuminances;
 
     /** Constructs an instance with the foreground and background having the same color. */
     SeparatedColors(int singleColor) {
@@ -313,6 +408,12 @@ public class ContrastSwatch {
     SeparatedColors(int backgroundColor, List<Integer> foregroundColors) {
       this.backgroundColor = backgroundColor;
       this.foregroundColors = ImmutableList.copyOf(foregroundColors);
+      this.backgroundLuminance = ContrastUtils.calculateLuminance(backgroundColor);
+      ImmutableList.Builder<Double> luminances = ImmutableList.builder();
+      for (Integer color : this.foregroundColors) {
+        luminances.add(ContrastUtils.calculateLuminance(checkNotNull(color)));
+      }
+      this.foregroundLuminances = luminances.build();
     }
 
     int getBackgroundColor() {
@@ -322,75 +423,13 @@ public class ContrastSwatch {
     ImmutableList<Integer> getForegroundColors() {
       return foregroundColors;
     }
-  }
-
-  /**
-   * The set of colors from an image, and the count (number of pixels) associated with each color.
-   */
-  private static class ColorHistogram {
-
-    private final ImmutableMap<Integer, Integer> colorHistogram;
 
-    ColorHistogram(int[] pixels) {
-      colorHistogram = processLuminanceData(pixels);
+    double getBackgroundLuminance() {
+      return backgroundLuminance;
     }
 
-    private ColorHistogram(Map<Integer, Integer> map) {
-      colorHistogram = ImmutableMap.copyOf(map);
-    }
-
-    ImmutableSet<Integer> getColors() {
-      return colorHistogram.keySet();
-    }
-
-    /** Returns each color paired with its count. The keys are colors, */
-    ImmutableSet<Map.Entry<Integer, Integer>> entrySet() {
-      return colorHistogram.entrySet();
-    }
-
-    @Nullable
-    Integer getCount(int color) {
-      return colorHistogram.get(color);
-    }
-
-    /**
-     * Finds the average luminance value within the set of colors for purposes of splitting colors
-     * into high-luminance and low-luminance buckets. This is explicitly not a weighted average.
-     */
-    double calculateAverageLuminance() {
-      double luminanceSum = 0;
-      for (int color : getColors()) {
-        luminanceSum += ContrastUtils.calculateLuminance(color);
-      }
-      return luminanceSum / getColors().size();
-    }
-
-    /**
-     * @return a map where the keys are colors that are present in the image, and the values are the
-     *     number of pixels with each color.
-     */
-    private static ImmutableMap<Integer, Integer> processLuminanceData(int[] pixels) {
-      if (pixels.length == 0) {
-        return ImmutableMap.of();
-      }
-      Arrays.sort(pixels);
-
-      ImmutableMap.Builder<Integer, Integer> colorHistogram = ImmutableMap.builder();
-      int currentColor = pixels[0];
-      int currentColorCount = 1;
-      for (int i = 1; i < pixels.length; i++) {
-        int color = pixels[i];
-        if (color == currentColor) {
-          currentColorCount++;
-        } else {
-          colorHistogram.put(currentColor, currentColorCount);
-          currentColor = color;
-          currentColorCount = 1;
-        }
-      }
-      // Catch the last unprocessed color
-      colorHistogram.put(currentColor, currentColorCount);
-      return colorHistogram.buildOrThrow();
+    ImmutableList<Double> getForegroundLuminances() {
+      return foregroundLuminances;
     }
   }
 }
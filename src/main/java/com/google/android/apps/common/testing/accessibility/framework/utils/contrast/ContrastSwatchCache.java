@@ -0,0 +1,199 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A cache of {@link ContrastSwatch}es computed from regions of a single screen capture. Views with
+ * identical bounds, such as a TextView filling a button, or repeated evaluations of the same
+ * screen capture, then analyze each distinct region only once.
+ *
+ * <p>Instances are safe for use by multiple threads.
+ *
+ * @see com.google.android.apps.common.testing.accessibility.framework.Parameters#getContrastSwatchCache()
+ */
+public final class ContrastSwatchCache {
+
+  private final Image image;
+  private final ConcurrentMap<Key, ContrastSwatch> swatches = new ConcurrentHashMap<>();
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicInteger carriedOverCount = new AtomicInteger();
+
+  /** The tile hashes of {@link #image}, or {@code null} if they have not been needed yet. */
+  private @Nullable ScreenCaptureTileHashes tileHashes;
+
+  /** @param image the screen capture from which all cached swatches are computed */
+  public ContrastSwatchCache(Image image) {
+    this.image = checkNotNull(image);
+  }
+
+  /** Returns the screen capture from which all cached swatches are computed. */
+  public Image getImage() {
+    return image;
+  }
+
+  /**
+   * Returns the tile hashes of the screen capture, computing them on first use. They are shared by
+   * everything which compares this screen capture with another, so the screen capture is hashed at
+   * most once, and must not be modified once they have been computed.
+   */
+  public synchronized ScreenCaptureTileHashes getTileHashes() {
+    ScreenCaptureTileHashes result = tileHashes;
+    if (result == null) {
+      result = new ScreenCaptureTileHashes(image);
+      tileHashes = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the swatch previously stored for a region of the screen capture, or {@code null} if
+   * there is none. Each call counts as a hit or a miss.
+   *
+   * @param region the bounds of the region within the screen capture
+   * @param multipleForegroundColors if multiple foreground colors were identified
+   */
+  public @Nullable ContrastSwatch get(Rect region, boolean multipleForegroundColors) {
+    return get(region, multipleForegroundColors, ContrastSwatch.UNLIMITED_PIXEL_BUDGET);
+  }
+
+  /**
+   * Returns the swatch previously stored for a region of the screen capture and pixel budget, or
+   * {@code null} if there is none. Each call counts as a hit or a miss.
+   *
+   * @param region the bounds of the region within the screen capture
+   * @param multipleForegroundColors if multiple foreground colors were identified
+   * @param pixelBudget the pixel budget with which the swatch was computed
+   */
+  public @Nullable ContrastSwatch get(
+      Rect region, boolean multipleForegroundColors, int pixelBudget) {
+    ContrastSwatch swatch = swatches.get(new Key(region, multipleForegroundColors, pixelBudget));
+    if (swatch == null) {
+      missCount.incrementAndGet();
+    } else {
+      hitCount.incrementAndGet();
+    }
+    return swatch;
+  }
+
+  /**
+   * Stores the swatch computed for a region of the screen capture. If another thread has already
+   * stored a swatch for the same region, that swatch is kept and returned instead.
+   *
+   * @param region the bounds of the region within the screen capture
+   * @param multipleForegroundColors if multiple foreground colors were identified
+   * @param swatch the swatch computed from the region
+   * @return the swatch now cached for the region
+   */
+  public ContrastSwatch put(Rect region, boolean multipleForegroundColors, ContrastSwatch swatch) {
+    return put(region, multipleForegroundColors, ContrastSwatch.UNLIMITED_PIXEL_BUDGET, swatch);
+  }
+
+  /**
+   * Stores the swatch computed for a region of the screen capture with a pixel budget. If another
+   * thread has already stored a swatch for the same region and budget, that swatch is kept and
+   * returned instead.
+   *
+   * @param region the bounds of the region within the screen capture
+   * @param multipleForegroundColors if multiple foreground colors were identified
+   * @param pixelBudget the pixel budget with which the swatch was computed
+   * @param swatch the swatch computed from the region
+   * @return the swatch now cached for the region
+   */
+  public ContrastSwatch put(
+      Rect region, boolean multipleForegroundColors, int pixelBudget, ContrastSwatch swatch) {
+    ContrastSwatch existing =
+        swatches.putIfAbsent(
+            new Key(region, multipleForegroundColors, pixelBudget), checkNotNull(swatch));
+    return (existing == null) ? swatch : existing;
+  }
+
+  /**
+   * Copies the swatches of {@code previous} whose regions lie entirely within unchanged tiles, so
+   * that they need not be computed again for this screen capture.
+   */
+  void putAllUnchanged(
+      ContrastSwatchCache previous, ScreenCaptureTileHashes.ChangedTiles changedTiles) {
+    for (Map.Entry<Key, ContrastSwatch> entry : previous.swatches.entrySet()) {
+      if (changedTiles.isUnchanged(entry.getKey().region)
+          && (swatches.putIfAbsent(entry.getKey(), entry.getValue()) == null)) {
+        carriedOverCount.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of swatches which were carried over from the analysis of an earlier screen
+   * capture.
+   *
+   * @see ContrastSwatchHistory
+   */
+  public int getCarriedOverCount() {
+    return carriedOverCount.get();
+  }
+
+  /** Returns the number of lookups which found a cached swatch. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns the number of lookups which did not find a cached swatch. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** Returns the number of distinct regions for which a swatch is cached. */
+  public int size() {
+    return swatches.size();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "{ContrastSwatchCache size=%d carriedOver=%d hits=%d misses=%d}",
+        size(),
+        getCarriedOverCount(),
+        getHitCount(),
+        getMissCount());
+  }
+
+  private static final class Key {
+
+    private final Rect region;
+    private final boolean multipleForegroundColors;
+    private final int pixelBudget;
+
+    Key(Rect region, boolean multipleForegroundColors, int pixelBudget) {
+      this.region = checkNotNull(region);
+      this.multipleForegroundColors = multipleForegroundColors;
+      this.pixelBudget = pixelBudget;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return (multipleForegroundColors == other.multipleForegroundColors)
+          && (pixelBudget == other.pixelBudget)
+          && region.equals(other.region);
+    }
+
+    @Override
+    public int hashCode() {
+      return (31 * ((31 * region.hashCode()) + pixelBudget)) + (multipleForegroundColors ? 1 : 0);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Carries contrast analysis over from one screen capture to the next. The same screen is often
+ * checked several times in succession with only a few pixels changing in between, such as a ripple
+ * or a blinking cursor. Each screen capture is divided into tiles which are hashed, and the cache
+ * for a new screen capture starts with the swatches of the previous one whose regions cover only
+ * tiles with unchanged hashes. The tiles are hashed only when there are swatches to carry over, so
+ * a screen capture which is checked once costs nothing extra.
+ *
+ * <p>A {@link ContrastSwatch} depends only upon the pixels of its region, so carrying it over does
+ * not change the results of the checks which use it. Everything else that contributes to a result,
+ * such as the attributes of the view, is evaluated afresh.
+ *
+ * <p>Instances are safe for use by multiple threads.
+ *
+ * @see com.google.android.apps.common.testing.accessibility.framework.Parameters#getContrastSwatchCache()
+ */
+public final class ContrastSwatchHistory {
+
+  private @Nullable ContrastSwatchCache latestCache;
+
+  /**
+   * Returns a new cache for a screen capture, containing the swatches of the most recent cache
+   * returned by this history whose regions are unchanged in {@code image}. The new cache then
+   * becomes the most recent.
+   *
+   * <p>The tiles of both screen captures are hashed here if they were not hashed before, through
+   * {@link ContrastSwatchCache#getTileHashes()}, so screen captures must not be modified once a
+   * cache has been created for them.
+   *
+   * @param image the screen capture from which all swatches in the new cache are computed
+   */
+  public synchronized ContrastSwatchCache newCache(Image image) {
+    ContrastSwatchCache cache = new ContrastSwatchCache(image);
+    @Nullable ContrastSwatchCache previousCache = latestCache;
+    if ((previousCache != null)
+        && (previousCache.size() > 0)
+        && (previousCache.getImage().getWidth() == image.getWidth())
+        && (previousCache.getImage().getHeight() == image.getHeight())) {
+      ScreenCaptureTileHashes.@Nullable ChangedTiles changedTiles =
+          cache.getTileHashes().compareTo(previousCache.getTileHashes());
+      if (changedTiles != null) {
+        cache.putAllUnchanged(previousCache, changedTiles);
+      }
+    }
+    latestCache = cache;
+    return cache;
+  }
+}
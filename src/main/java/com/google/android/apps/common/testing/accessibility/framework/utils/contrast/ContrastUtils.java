@@ -16,10 +16,13 @@
 
 package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
+import androidx.annotation.IntRange;
 import com.google.common.collect.Range;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /** Utilities for dealing with colors and evaluation of their relative contrast. */
 public final class ContrastUtils {
@@ -46,6 +49,24 @@ public final class ContrastUtils {
 
   private static final int COLOR_MASK = 0xFF;
 
+  /** Number of values in a CIE-L*ab color: L*, a* and b*. */
+  public static final int LAB_COMPONENT_COUNT = 3;
+
+  /** Number of entries in {@link #labCache}. Must be a power of two. */
+  private static final int LAB_CACHE_SIZE = 1024;
+
+  private static final int LAB_CACHE_SHIFT =
+      Integer.SIZE - Integer.numberOfTrailingZeros(LAB_CACHE_SIZE);
+
+  /**
+   * Direct-mapped cache of recently converted CIE-L*ab colors. Entries are immutable, so concurrent
+   * readers may miss a recent conversion but never observe a partially written one.
+   */
+  private static final @Nullable LabColor[] labCache = new LabColor[LAB_CACHE_SIZE];
+
+  /** Linear (gamma-expanded) value of each 8-bit sRGB component, indexed by component value. */
+  private static final double[] LINEAR_COMPONENTS = createLinearComponentTable();
+
   private ContrastUtils() {
     // Not instantiable
   }
@@ -65,7 +86,48 @@ public final class ContrastUtils {
     return 0.2126d * r + 0.7152d * g + 0.0722d * b;
   }
 
-  private static double linearColor(int component) {
+  /**
+   * Calculates the luminance values of several colors at once. Each result is identical to that of
+   * {@link #calculateLuminance(int)} for the corresponding color.
+   *
+   * @param colors The {@link Color}s to evaluate
+   * @param out The array to receive the luminance values, at the same indices as {@code colors}
+   * @throws IllegalArgumentException if {@code out} is shorter than {@code colors}
+   */
+  public static void calculateLuminances(int[] colors, double[] out) {
+    calculateLuminances(colors, colors.length, out);
+  }
+
+  /**
+   * Calculates the luminance values of the first {@code length} colors in {@code colors}.
+   *
+   * @see #calculateLuminances(int[], double[])
+   */
+  public static void calculateLuminances(int[] colors, int length, double[] out) {
+    checkArgument((length >= 0) && (length <= colors.length), "length out of range");
+    checkArgument(out.length >= length, "out must hold at least length values");
+    for (int i = 0; i < length; i++) {
+      out[i] = calculateLuminance(colors[i]);
+    }
+  }
+
+  /**
+   * Returns the linear value of an 8-bit sRGB color component, as used by {@link
+   * #calculateLuminance(int)} and {@link #rgb2lab(int)}.
+   */
+  public static double linearColor(@IntRange(from = 0, to = 255) int component) {
+    return LINEAR_COMPONENTS[component];
+  }
+
+  private static double[] createLinearComponentTable() {
+    double[] table = new double[COLOR_MASK + 1];
+    for (int component = 0; component <= COLOR_MASK; component++) {
+      table[component] = computeLinearColor(component);
+    }
+    return table;
+  }
+
+  private static double computeLinearColor(int component) {
     double sRGB = component / 255.0d;
     if (sRGB <= 0.03928d) {
       return sRGB / 12.92d;
@@ -83,14 +145,39 @@ public final class ContrastUtils {
    * @return the perceived color diffrence Delta E.
    */
   public static double colorDifference(int color1, int color2) {
-    double[] lab1 = rgb2lab(color1);
-    double[] lab2 = rgb2lab(color2);
-
-    double deltaL = lab1[0] - lab2[0];
-    double deltaA = lab1[1] - lab2[1];
-    double deltaB = lab1[2] - lab2[2];
-    double c1 = Math.hypot(lab1[1], lab1[2]);
-    double c2 = Math.hypot(lab2[1], lab2[2]);
+    LabColor lab1 = getLabColor(color1);
+    LabColor lab2 = getLabColor(color2);
+    return colorDifference(lab1.l, lab1.a, lab1.b, lab2.l, lab2.a, lab2.b);
+  }
+
+  /**
+   * Calculates the Delta E of CIE-94 perceived color difference of two colors which have already
+   * been converted to CIE-L*ab, such as by {@link #rgb2lab(int, double[], int)}. As with {@link
+   * #colorDifference(int, int)}, the difference is not symmetric.
+   *
+   * @param lab1 array holding the L*, a* and b* values of the first color
+   * @param offset1 the index of the first color's L* value within {@code lab1}
+   * @param lab2 array holding the L*, a* and b* values of the second color
+   * @param offset2 the index of the second color's L* value within {@code lab2}
+   * @return the perceived color diffrence Delta E.
+   */
+  public static double colorDifference(double[] lab1, int offset1, double[] lab2, int offset2) {
+    return colorDifference(
+        lab1[offset1],
+        lab1[offset1 + 1],
+        lab1[offset1 + 2],
+        lab2[offset2],
+        lab2[offset2 + 1],
+        lab2[offset2 + 2]);
+  }
+
+  private static double colorDifference(
+      double l1, double a1, double b1, double l2, double a2, double b2) {
+    double deltaL = l1 - l2;
+    double deltaA = a1 - a2;
+    double deltaB = b1 - b2;
+    double c1 = Math.hypot(a1, b1);
+    double c2 = Math.hypot(a2, b2);
     double deltaC = c1 - c2;
     double deltaH = deltaA * deltaA + deltaB * deltaB - deltaC * deltaC;
     deltaH = deltaH < 0 ? 0 : Math.sqrt(deltaH);
@@ -111,6 +198,40 @@ public final class ContrastUtils {
    * @return the three values for L*, a* and b*
    */
   public static double[] rgb2lab(int color) {
+    double[] lab = new double[LAB_COMPONENT_COUNT];
+    rgb2lab(color, lab, 0);
+    return lab;
+  }
+
+  /**
+   * Convert linear RGB to CIE-L*ab color space, writing the result into an existing array. Recent
+   * conversions are cached, so repeated conversions of the same color do not recompute it.
+   *
+   * @param color The int representation of an sRGB color. Alpha is ignored.
+   * @param out The array to receive L*, a* and b*, in that order
+   * @param offset The index within {@code out} at which to write L*
+   */
+  public static void rgb2lab(int color, double[] out, int offset) {
+    LabColor lab = getLabColor(color);
+    out[offset] = lab.l;
+    out[offset + 1] = lab.a;
+    out[offset + 2] = lab.b;
+  }
+
+  /** Returns the CIE-L*ab conversion of {@code color}, from the cache if possible. */
+  private static LabColor getLabColor(int color) {
+    int rgb = color & 0xFFFFFF;
+    int slot = (rgb * 0x9E3779B9) >>> LAB_CACHE_SHIFT;
+    LabColor cached = labCache[slot];
+    if ((cached != null) && (cached.rgb == rgb)) {
+      return cached;
+    }
+    LabColor lab = computeLabColor(rgb);
+    labCache[slot] = lab;
+    return lab;
+  }
+
+  private static LabColor computeLabColor(int color) {
     double r = linearColor(Color.red(color));
     double g = linearColor(Color.green(color));
     double b = linearColor(Color.blue(color));
@@ -120,7 +241,7 @@ public final class ContrastUtils {
     x = (x > 0.008856d) ? Math.cbrt(x) : (7.787d * x) + 16.0d / 116;
     y = (y > 0.008856d) ? Math.cbrt(y) : (7.787d * y) + 16.0d / 116;
     z = (z > 0.008856d) ? Math.cbrt(z) : (7.787d * z) + 16.0d / 116;
-    return new double[] {(116 * y) - 16, 500 * (x - y), 200 * (y - z)};
+    return new LabColor(color, (116 * y) - 16, 500 * (x - y), 200 * (y - z));
   }
 
   /**
@@ -236,4 +357,20 @@ public final class ContrastUtils {
   private static int compositeComponents(int component, int componentToOverlayOn, int alpha) {
     return (component * alpha + componentToOverlayOn * (COLOR_MASK - alpha)) / COLOR_MASK;
   }
+
+  /** An immutable CIE-L*ab color, along with the RGB value from which it was converted. */
+  private static final class LabColor {
+
+    final int rgb;
+    final double l;
+    final double a;
+    final double b;
+
+    LabColor(int rgb, double l, double a, double b) {
+      this.rgb = rgb;
+      this.l = l;
+      this.a = a;
+      this.b = b;
+    }
+  }
 }
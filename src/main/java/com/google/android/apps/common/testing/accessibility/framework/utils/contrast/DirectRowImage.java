@@ -0,0 +1,20 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+/**
+ * An {@link Image} that can copy one row of its pixels at a time without first copying the whole
+ * image. The contrast analysis in this package reads such images a row at a time through a single
+ * reusable buffer. Images that do not implement this interface are read through one copy made with
+ * {@link Image#getPixels()}.
+ */
+public interface DirectRowImage extends Image {
+
+  /**
+   * Copies one row of the image into an existing array. Each value is a packed int representing a
+   * Color. Unlike {@link #getPixels()}, this does not allocate.
+   *
+   * @param y The row to read, from {@code 0} to {@link #getHeight()} (exclusive)
+   * @param dst The array to receive {@link #getWidth()} pixels
+   * @param offset The index within {@code dst} at which to write the leftmost pixel of the row
+   */
+  void readRow(int y, int[] dst, int offset);
+}
@@ -0,0 +1,46 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Reads the rows of an {@link Image} in turn. A {@link DirectRowImage} is read a row at a time
+ * without copying; any other image is copied once with {@link Image#getPixels()}, and its rows are
+ * read from the copy.
+ */
+final class ImageRowReader {
+
+  private final @Nullable DirectRowImage directImage;
+  private final int width;
+  private final int height;
+
+  /** The pixels of an image without direct row access, or {@code null} for a direct one. */
+  private final int @Nullable [] pixels;
+
+  ImageRowReader(Image image) {
+    width = image.getWidth();
+    height = image.getHeight();
+    if (image instanceof DirectRowImage) {
+      directImage = (DirectRowImage) image;
+      pixels = null;
+    } else {
+      directImage = null;
+      pixels = image.getPixels();
+    }
+  }
+
+  /**
+   * Copies one row of the image into an existing array, as {@link
+   * DirectRowImage#readRow(int, int[], int)} does.
+   */
+  void readRow(int y, int[] dst, int offset) {
+    if (directImage != null) {
+      directImage.readRow(y, dst, offset);
+    } else {
+      checkElementIndex(y, height, "y");
+      System.arraycopy(checkNotNull(pixels), y * width, dst, offset, width);
+    }
+  }
+}
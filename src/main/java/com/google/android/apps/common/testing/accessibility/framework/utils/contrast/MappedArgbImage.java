@@ -0,0 +1,176 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Implementation of an {@link Image} backed by a memory-mapped file of raw ARGB pixels. Pixel data
+ * is paged in by the operating system as it is read rather than being held on the heap, so large
+ * batches of screenshots can be evaluated with a heap footprint that does not depend on their
+ * resolution.
+ *
+ * <p>Files are written by {@link #write(Image, File)}. The layout is a header of four little-endian
+ * ints (magic number, format version, width and height) followed by the pixels in row-major order,
+ * each as a little-endian packed ARGB int.
+ *
+ * <p>Crops are views over the same mapping, so cropping is O(1) and never copies pixels.
+ */
+public final class MappedArgbImage implements DirectRowImage {
+
+  /** The ASCII characters "ARGB". */
+  private static final int MAGIC = 0x41524742;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_INTS = 4;
+
+  private static final int BYTES_PER_INT = 4;
+
+  private final IntBuffer pixels;
+  private final int offset;
+  private final int stride;
+  private final int width;
+  private final int height;
+
+  private MappedArgbImage(IntBuffer pixels, int offset, int stride, int width, int height) {
+    this.pixels = pixels;
+    this.offset = offset;
+    this.stride = stride;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Maps a file previously written by {@link #write(Image, File)}. The file is mapped read-only, and
+   * must not be modified or truncated while the returned image is in use.
+   *
+   * @throws IOException if the file cannot be read, or is not in the expected format
+   */
+  public static MappedArgbImage open(File file) throws IOException {
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        FileChannel channel = randomAccessFile.getChannel()) {
+      long fileSize = channel.size();
+      if (fileSize < HEADER_INTS * BYTES_PER_INT) {
+        throw new IOException("File too short for header: " + file);
+      }
+      if (fileSize > Integer.MAX_VALUE) {
+        throw new IOException("File too large to map: " + file);
+      }
+      // The mapping remains valid after the channel is closed.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+      IntBuffer ints = buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+      if ((ints.get(0) != MAGIC) || (ints.get(1) != VERSION)) {
+        throw new IOException("Not a raw ARGB image file: " + file);
+      }
+      int width = ints.get(2);
+      int height = ints.get(3);
+      if ((width < 0)
+          || (height < 0)
+          || (((long) width * height) != (fileSize / BYTES_PER_INT) - HEADER_INTS)) {
+        throw new IOException("Image size does not match file size: " + file);
+      }
+      return new MappedArgbImage(ints, HEADER_INTS, width, width, height);
+    }
+  }
+
+  /**
+   * Writes an image to a file in the layout read by {@link #open(File)}, replacing any existing
+   * contents. The image is read a row at a time, so this can be used to convert screenshots one by
+   * one ahead of a batch evaluation.
+   *
+   * @throws IOException if the file cannot be written
+   */
+  public static void write(Image image, File file) throws IOException {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    long fileSize = ((long) HEADER_INTS + ((long) width * height)) * BYTES_PER_INT;
+    checkArgument(fileSize <= Integer.MAX_VALUE, "image too large to map");
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        FileChannel channel = randomAccessFile.getChannel()) {
+      channel.truncate(0);
+      ByteBuffer buffer =
+          ByteBuffer.allocate(Math.max(HEADER_INTS, width) * BYTES_PER_INT)
+              .order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height);
+      buffer.flip();
+      writeFully(channel, buffer);
+
+      ImageRowReader rows = new ImageRowReader(image);
+      int[] row = new int[width];
+      for (int y = 0; y < height; y++) {
+        rows.readRow(y, row, 0);
+        buffer.clear();
+        buffer.asIntBuffer().put(row);
+        buffer.limit(width * BYTES_PER_INT);
+        writeFully(channel, buffer);
+      }
+    }
+  }
+
+  @Override
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public int getWidth() {
+    return width;
+  }
+
+  @Override
+  public MappedArgbImage crop(int left, int top, int width, int height) {
+    checkArgument(left >= 0, "left must be >= 0");
+    checkArgument(top >= 0, "top must be >= 0");
+    checkArgument(width > 0, "width must be > 0");
+    checkArgument(height > 0, "height must be > 0");
+    checkArgument(left + width <= this.width);
+    checkArgument(top + height <= this.height);
+    return new MappedArgbImage(pixels, offset + (top * stride) + left, stride, width, height);
+  }
+
+  @Override
+  public int[] getPixels() {
+    int[] result = new int[width * height];
+    for (int y = 0; y < height; y++) {
+      readRow(y, result, y * width);
+    }
+    return result;
+  }
+
+  @Override
+  public void readRow(int y, int[] dst, int offset) {
+    checkElementIndex(y, height, "y");
+    // Absolute reads leave the shared buffer's position untouched, so crops may be read
+    // concurrently.
+    int start = this.offset + (y * stride);
+    for (int x = 0; x < width; x++) {
+      dst[offset + x] = pixels.get(start + x);
+    }
+  }
+
+  @Override
+  public String toString() {
+    int pixelOffset = offset - HEADER_INTS;
+    return String.format(
+        "{MappedArgbImage left=%d top=%d width=%d height=%d}",
+        (stride == 0) ? 0 : pixelOffset % stride,
+        (stride == 0) ? 0 : pixelOffset / stride,
+        width,
+        height);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
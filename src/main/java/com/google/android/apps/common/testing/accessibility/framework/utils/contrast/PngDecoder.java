@@ -0,0 +1,382 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A streaming decoder for PNG images which produces an {@link ArgbImage}. Image data is inflated
+ * and unfiltered one scanline at a time as chunks are read, so only two scanlines of encoded data
+ * are held in memory alongside the decoded pixels.
+ *
+ * <p>Only non-interlaced images with a bit depth of 8 are supported. Ancillary chunks other than
+ * {@code tRNS} are ignored.
+ *
+ * <p>Derived from the specification at https://www.w3.org/TR/png/
+ */
+final class PngDecoder {
+
+  private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+
+  private static final int CHUNK_IHDR = 0x49484452;
+  private static final int CHUNK_PLTE = 0x504C5445;
+  private static final int CHUNK_TRNS = 0x74524E53;
+  private static final int CHUNK_IDAT = 0x49444154;
+  private static final int CHUNK_IEND = 0x49454E44;
+
+  private static final int COLOR_TYPE_GRAY = 0;
+  private static final int COLOR_TYPE_RGB = 2;
+  private static final int COLOR_TYPE_PALETTE = 3;
+  private static final int COLOR_TYPE_GRAY_ALPHA = 4;
+  private static final int COLOR_TYPE_RGBA = 6;
+
+  private static final int FILTER_NONE = 0;
+  private static final int FILTER_SUB = 1;
+  private static final int FILTER_UP = 2;
+  private static final int FILTER_AVERAGE = 3;
+  private static final int FILTER_PAETH = 4;
+
+  private final DataInputStream in;
+  private final CRC32 crc = new CRC32();
+  private final Inflater inflater = new Inflater();
+
+  private int width;
+  private int height;
+  private int colorType;
+  private int bytesPerPixel;
+  private int @Nullable [] palette;
+
+  /** Whether a gray or RGB image designates {@link #transparentColor} as fully transparent. */
+  private boolean hasTransparentColor;
+
+  /** The transparent color of a gray or RGB image, as an opaque packed color. */
+  private int transparentColor;
+
+  private int[] pixels = new int[0];
+  private byte[] scanline = new byte[0];
+  private byte[] previousScanline = new byte[0];
+  private int scanlinePosition;
+  private int currentRow;
+
+  PngDecoder(InputStream in) {
+    this.in = new DataInputStream(in);
+  }
+
+  /** Reads the entire PNG image from the stream. */
+  ArgbImage decode() throws IOException {
+    try {
+      if (in.readLong() != PNG_SIGNATURE) {
+        throw new IOException("Not a PNG image");
+      }
+      readHeader();
+      while (true) {
+        int length = in.readInt();
+        int type = in.readInt();
+        if (length < 0) {
+          throw new IOException("Invalid chunk length");
+        }
+        crc.reset();
+        crc.update(type >>> 24);
+        crc.update(type >>> 16);
+        crc.update(type >>> 8);
+        crc.update(type);
+        byte[] data = readChunkData(length);
+        switch (type) {
+          case CHUNK_PLTE:
+            readPalette(data);
+            break;
+          case CHUNK_TRNS:
+            readTransparency(data);
+            break;
+          case CHUNK_IDAT:
+            inflate(data);
+            break;
+          case CHUNK_IEND:
+            if (currentRow < height) {
+              throw new IOException("Image data ended after " + currentRow + " rows");
+            }
+            return new ArgbImage(pixels, width, height);
+          default:
+            if ((type & 0x20000000) == 0) {
+              throw new IOException("Unsupported critical chunk " + chunkName(type));
+            }
+        }
+      }
+    } catch (EOFException e) {
+      throw new IOException("Truncated PNG image", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private void readHeader() throws IOException {
+    int length = in.readInt();
+    int type = in.readInt();
+    if ((type != CHUNK_IHDR) || (length != 13)) {
+      throw new IOException("Missing IHDR chunk");
+    }
+    crc.reset();
+    crc.update(type >>> 24);
+    crc.update(type >>> 16);
+    crc.update(type >>> 8);
+    crc.update(type);
+    byte[] data = readChunkData(length);
+    width = readInt(data, 0);
+    height = readInt(data, 4);
+    int bitDepth = data[8] & 0xFF;
+    colorType = data[9] & 0xFF;
+    int compressionMethod = data[10] & 0xFF;
+    int filterMethod = data[11] & 0xFF;
+    int interlaceMethod = data[12] & 0xFF;
+    if ((width <= 0) || (height <= 0) || (((long) width * height) > Integer.MAX_VALUE - 8)) {
+      throw new IOException("Unsupported image size " + width + "x" + height);
+    }
+    if (bitDepth != 8) {
+      throw new IOException("Unsupported bit depth " + bitDepth);
+    }
+    if ((compressionMethod != 0) || (filterMethod != 0)) {
+      throw new IOException("Unsupported compression or filter method");
+    }
+    if (interlaceMethod != 0) {
+      throw new IOException("Interlaced images are not supported");
+    }
+    switch (colorType) {
+      case COLOR_TYPE_GRAY:
+      case COLOR_TYPE_PALETTE:
+        bytesPerPixel = 1;
+        break;
+      case COLOR_TYPE_GRAY_ALPHA:
+        bytesPerPixel = 2;
+        break;
+      case COLOR_TYPE_RGB:
+        bytesPerPixel = 3;
+        break;
+      case COLOR_TYPE_RGBA:
+        bytesPerPixel = 4;
+        break;
+      default:
+        throw new IOException("Unsupported color type " + colorType);
+    }
+    pixels = new int[width * height];
+    // Each scanline is preceded by its filter type byte.
+    scanline = new byte[1 + (width * bytesPerPixel)];
+    previousScanline = new byte[scanline.length];
+  }
+
+  private byte[] readChunkData(int length) throws IOException {
+    byte[] data = new byte[length];
+    in.readFully(data);
+    crc.update(data, 0, length);
+    if ((int) crc.getValue() != in.readInt()) {
+      throw new IOException("Chunk CRC mismatch");
+    }
+    return data;
+  }
+
+  private void readPalette(byte[] data) throws IOException {
+    if ((data.length % 3 != 0) || (data.length > 256 * 3)) {
+      throw new IOException("Invalid PLTE chunk");
+    }
+    int[] entries = new int[data.length / 3];
+    for (int i = 0; i < entries.length; i++) {
+      entries[i] =
+          Color.argb(0xFF, data[i * 3] & 0xFF, data[i * 3 + 1] & 0xFF, data[i * 3 + 2] & 0xFF);
+    }
+    palette = entries;
+  }
+
+  private void readTransparency(byte[] data) throws IOException {
+    switch (colorType) {
+      case COLOR_TYPE_PALETTE:
+        int[] entries = palette;
+        if ((entries == null) || (data.length > entries.length)) {
+          throw new IOException("Invalid tRNS chunk");
+        }
+        for (int i = 0; i < data.length; i++) {
+          entries[i] = ((data[i] & 0xFF) << 24) | (entries[i] & 0xFFFFFF);
+        }
+        break;
+      case COLOR_TYPE_GRAY:
+        if (data.length >= 2) {
+          // Samples are stored as 16-bit values; with 8-bit depth only the low byte is significant.
+          int gray = data[1] & 0xFF;
+          transparentColor = Color.argb(0xFF, gray, gray, gray);
+          hasTransparentColor = true;
+        }
+        break;
+      case COLOR_TYPE_RGB:
+        if (data.length >= 6) {
+          transparentColor = Color.argb(0xFF, data[1] & 0xFF, data[3] & 0xFF, data[5] & 0xFF);
+          hasTransparentColor = true;
+        }
+        break;
+      default:
+        // tRNS is not permitted for color types with an alpha channel, so it is ignored.
+        break;
+    }
+  }
+
+  private void inflate(byte[] data) throws IOException {
+    inflater.setInput(data);
+    try {
+      while (currentRow < height) {
+        int count =
+            inflater.inflate(scanline, scanlinePosition, scanline.length - scanlinePosition);
+        if (count == 0) {
+          if (inflater.needsInput() || inflater.finished()) {
+            return;
+          }
+          if (inflater.needsDictionary()) {
+            throw new IOException("Image data requires a preset dictionary");
+          }
+        }
+        scanlinePosition += count;
+        if (scanlinePosition == scanline.length) {
+          unfilterScanline();
+          convertScanline();
+          byte[] swap = previousScanline;
+          previousScanline = scanline;
+          scanline = swap;
+          scanlinePosition = 0;
+          currentRow++;
+        }
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt image data", e);
+    }
+  }
+
+  /** Reverses the filter applied to {@link #scanline}, using {@link #previousScanline}. */
+  private void unfilterScanline() throws IOException {
+    byte[] line = scanline;
+    byte[] prior = previousScanline;
+    int filterType = line[0] & 0xFF;
+    int bpp = bytesPerPixel;
+    // On the first row, the prior scanline is all zeros.
+    boolean hasPrior = currentRow > 0;
+    switch (filterType) {
+      case FILTER_NONE:
+        break;
+      case FILTER_SUB:
+        for (int i = 1 + bpp; i < line.length; i++) {
+          line[i] += line[i - bpp];
+        }
+        break;
+      case FILTER_UP:
+        if (hasPrior) {
+          for (int i = 1; i < line.length; i++) {
+            line[i] += prior[i];
+          }
+        }
+        break;
+      case FILTER_AVERAGE:
+        for (int i = 1; i < line.length; i++) {
+          int left = (i > bpp) ? (line[i - bpp] & 0xFF) : 0;
+          int up = hasPrior ? (prior[i] & 0xFF) : 0;
+          line[i] += (byte) ((left + up) >>> 1);
+        }
+        break;
+      case FILTER_PAETH:
+        for (int i = 1; i < line.length; i++) {
+          int left = (i > bpp) ? (line[i - bpp] & 0xFF) : 0;
+          int up = hasPrior ? (prior[i] & 0xFF) : 0;
+          int upLeft = (hasPrior && (i > bpp)) ? (prior[i - bpp] & 0xFF) : 0;
+          line[i] += (byte) paethPredictor(left, up, upLeft);
+        }
+        break;
+      default:
+        throw new IOException("Invalid filter type " + filterType + " in row " + currentRow);
+    }
+  }
+
+  /** Converts the unfiltered {@link #scanline} into packed ARGB pixels. */
+  private void convertScanline() throws IOException {
+    byte[] line = scanline;
+    int[] dst = pixels;
+    int dstIndex = currentRow * width;
+    int i = 1;
+    switch (colorType) {
+      case COLOR_TYPE_GRAY:
+        for (int x = 0; x < width; x++, i++) {
+          int gray = line[i] & 0xFF;
+          dst[dstIndex + x] = withTransparency(Color.argb(0xFF, gray, gray, gray));
+        }
+        break;
+      case COLOR_TYPE_GRAY_ALPHA:
+        for (int x = 0; x < width; x++, i += 2) {
+          int gray = line[i] & 0xFF;
+          dst[dstIndex + x] = Color.argb(line[i + 1] & 0xFF, gray, gray, gray);
+        }
+        break;
+      case COLOR_TYPE_RGB:
+        for (int x = 0; x < width; x++, i += 3) {
+          dst[dstIndex + x] =
+              withTransparency(
+                  Color.argb(0xFF, line[i] & 0xFF, line[i + 1] & 0xFF, line[i + 2] & 0xFF));
+        }
+        break;
+      case COLOR_TYPE_RGBA:
+        for (int x = 0; x < width; x++, i += 4) {
+          dst[dstIndex + x] =
+              Color.argb(
+                  line[i + 3] & 0xFF, line[i] & 0xFF, line[i + 1] & 0xFF, line[i + 2] & 0xFF);
+        }
+        break;
+      case COLOR_TYPE_PALETTE:
+        int[] entries = palette;
+        if (entries == null) {
+          throw new IOException("Missing PLTE chunk");
+        }
+        for (int x = 0; x < width; x++, i++) {
+          int index = line[i] & 0xFF;
+          if (index >= entries.length) {
+            throw new IOException("Palette index " + index + " out of range");
+          }
+          dst[dstIndex + x] = entries[index];
+        }
+        break;
+      default:
+        throw new IOException("Unsupported color type " + colorType);
+    }
+  }
+
+  private int withTransparency(int opaqueColor) {
+    return (hasTransparentColor && (opaqueColor == transparentColor))
+        ? (opaqueColor & 0xFFFFFF)
+        : opaqueColor;
+  }
+
+  private static int paethPredictor(int left, int up, int upLeft) {
+    int estimate = left + up - upLeft;
+    int distanceLeft = Math.abs(estimate - left);
+    int distanceUp = Math.abs(estimate - up);
+    int distanceUpLeft = Math.abs(estimate - upLeft);
+    if ((distanceLeft <= distanceUp) && (distanceLeft <= distanceUpLeft)) {
+      return left;
+    } else if (distanceUp <= distanceUpLeft) {
+      return up;
+    } else {
+      return upLeft;
+    }
+  }
+
+  private static int readInt(byte[] data, int offset) {
+    return ((data[offset] & 0xFF) << 24)
+        | ((data[offset + 1] & 0xFF) << 16)
+        | ((data[offset + 2] & 0xFF) << 8)
+        | (data[offset + 3] & 0xFF);
+  }
+
+  private static String chunkName(int type) {
+    StringBuilder name = new StringBuilder(4);
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      name.append((char) ((type >>> shift) & 0xFF));
+    }
+    return name.toString();
+  }
+}
@@ -0,0 +1,128 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import com.google.android.apps.common.testing.accessibility.framework.replacements.Rect;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A 64-bit hash of the pixels of each square tile of a screen capture, used to find the regions of
+ * a screen capture which are unchanged from an earlier one.
+ *
+ * <p>Instances are immutable.
+ */
+public final class ScreenCaptureTileHashes {
+
+  /** The width and height of a tile, in pixels. */
+  public static final int TILE_SIZE = 32;
+
+  private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+  private static final long FNV_PRIME = 0x100000001B3L;
+
+  private final int width;
+  private final int height;
+  private final int tileColumns;
+  private final int tileRows;
+
+  /** The hash of each tile, in row-major order. */
+  private final long[] hashes;
+
+  /** Hashes the tiles of an image. The image is read once, a row at a time. */
+  public ScreenCaptureTileHashes(Image image) {
+    width = image.getWidth();
+    height = image.getHeight();
+    tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+    tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+    hashes = new long[tileColumns * tileRows];
+
+    ImageRowReader rows = new ImageRowReader(image);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      rows.readRow(y, row, 0);
+      int rowStart = (y / TILE_SIZE) * tileColumns;
+      if ((y % TILE_SIZE) == 0) {
+        for (int column = 0; column < tileColumns; column++) {
+          hashes[rowStart + column] = FNV_OFFSET_BASIS;
+        }
+      }
+      for (int x = 0; x < width; x++) {
+        int tile = rowStart + (x / TILE_SIZE);
+        // FNV-1a over whole pixels. Pixels of a tile are always visited in the same order, so
+        // positions within the tile are reflected in the hash.
+        hashes[tile] = (hashes[tile] ^ row[x]) * FNV_PRIME;
+      }
+    }
+  }
+
+  /**
+   * Compares these hashes with those of an earlier screen capture.
+   *
+   * @return the tiles which differ, or {@code null} if the screen captures differ in size and so
+   *     cannot be compared
+   */
+  public @Nullable ChangedTiles compareTo(ScreenCaptureTileHashes previous) {
+    if ((width != previous.width) || (height != previous.height)) {
+      return null;
+    }
+    return new ChangedTiles(this, previous);
+  }
+
+  /**
+   * The tiles which differ between two screen captures of the same size, stored as a summed-area
+   * table so that any region can be tested in constant time.
+   */
+  public static final class ChangedTiles {
+
+    private final int tileColumns;
+    private final int tileRows;
+
+    /**
+     * The number of changed tiles above and to the left of each tile corner, with {@code
+     * tileColumns + 1} entries per row.
+     */
+    private final int[] changedCounts;
+
+    private ChangedTiles(ScreenCaptureTileHashes current, ScreenCaptureTileHashes previous) {
+      tileColumns = current.tileColumns;
+      tileRows = current.tileRows;
+      int stride = tileColumns + 1;
+      changedCounts = new int[stride * (tileRows + 1)];
+      for (int row = 0; row < tileRows; row++) {
+        int rowChangedCount = 0;
+        for (int column = 0; column < tileColumns; column++) {
+          int tile = (row * tileColumns) + column;
+          if (current.hashes[tile] != previous.hashes[tile]) {
+            rowChangedCount++;
+          }
+          changedCounts[((row + 1) * stride) + column + 1] =
+              changedCounts[(row * stride) + column + 1] + rowChangedCount;
+        }
+      }
+    }
+
+    /** Returns the number of tiles which differ. */
+    public int getChangedTileCount() {
+      return changedCounts[changedCounts.length - 1];
+    }
+
+    /** Returns {@code true} if no tile overlapping {@code region} differs. */
+    public boolean isUnchanged(Rect region) {
+      if (region.isEmpty()) {
+        return false;
+      }
+      int firstColumn = clamp(region.getLeft() / TILE_SIZE, tileColumns);
+      int firstRow = clamp(region.getTop() / TILE_SIZE, tileRows);
+      int endColumn = clamp(((region.getRight() - 1) / TILE_SIZE) + 1, tileColumns);
+      int endRow = clamp(((region.getBottom() - 1) / TILE_SIZE) + 1, tileRows);
+      int stride = tileColumns + 1;
+      int count =
+          changedCounts[(endRow * stride) + endColumn]
+              - changedCounts[(firstRow * stride) + endColumn]
+              - changedCounts[(endRow * stride) + firstColumn]
+              + changedCounts[(firstRow * stride) + firstColumn];
+      return count == 0;
+    }
+
+    private static int clamp(int value, int max) {
+      return Math.max(0, Math.min(value, max));
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package com.google.android.apps.common.testing.accessibility.framework.utils.contrast;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+
+/**
+ * An index of the dominant colors of a whole screen capture, built once and then used to compute
+ * {@link ContrastSwatch}es for many regions without rescanning their pixels.
+ *
+ * <p>The screen capture is divided into square tiles, and the {@code maxColorsPerTile} most
+ * frequent colors of each tile are stored with their counts. The histogram of a region is the sum of
+ * the stored histograms of the tiles that lie entirely within it, plus the exact pixels of the
+ * partially covered tiles along its edges. Computing a swatch for a region therefore reads
+ * O(tiles + perimeter) values rather than O(area) pixels, which pays off when many overlapping
+ * views, such as containers, list rows and their children, are evaluated against one capture.
+ *
+ * <p>Results are identical to those of {@link ContrastSwatch#ContrastSwatch(Image, boolean)} when no
+ * tile within a region has more than {@code maxColorsPerTile} colors, which is typical of flat UI.
+ * Otherwise, the least frequent colors of the busiest tiles are omitted. These are mostly
+ * anti-aliasing and gradient pixels, which are merged into their neighbors by the swatch analysis
+ * anyway, but they do contribute to the average luminance used to separate the background from the
+ * foreground, so results for photographic content are approximate.
+ *
+ * <p>Instances are immutable once built, and are safe for use by multiple threads.
+ *
+ * @see com.google.android.apps.common.testing.accessibility.framework.Parameters#setEnableTiledContrastIndex(boolean)
+ */
+public final class TiledColorIndex {
+
+  /** The default width and height of a tile, in pixels. */
+  public static final int DEFAULT_TILE_SIZE = 16;
+
+  /** The default number of colors stored for each tile. */
+  public static final int DEFAULT_MAX_COLORS_PER_TILE = 8;
+
+  private final Image image;
+  private final int tileSize;
+  private final int maxColorsPerTile;
+  private final int tileColumns;
+  private final int tileRows;
+
+  /** The stored colors of each tile, in blocks of {@link #maxColorsPerTile} entries. */
+  private final int[] tileColors;
+
+  /** The count of each stored color, parallel to {@link #tileColors}. */
+  private final int[] tileCounts;
+
+  /** The number of colors stored for each tile. */
+  private final int[] tileSizes;
+
+  /**
+   * Builds an index of a screen capture with the default tile size and number of colors per tile.
+   *
+   * @param image the screen capture to index
+   */
+  public TiledColorIndex(Image image) {
+    this(image, DEFAULT_TILE_SIZE, DEFAULT_MAX_COLORS_PER_TILE);
+  }
+
+  /**
+   * Builds an index of a screen capture. The image is read once, a row at a time.
+   *
+   * @param image the screen capture to index
+   * @param tileSize the width and height of a tile, in pixels
+   * @param maxColorsPerTile the number of most frequent colors to store for each tile
+   */
+  public TiledColorIndex(Image image, int tileSize, int maxColorsPerTile) {
+    checkArgument(tileSize > 0, "tileSize must be > 0");
+    checkArgument(maxColorsPerTile > 0, "maxColorsPerTile must be > 0");
+    this.image = checkNotNull(image);
+    this.tileSize = tileSize;
+    this.maxColorsPerTile = maxColorsPerTile;
+    int width = image.getWidth();
+    int height = image.getHeight();
+    tileColumns = ceilDiv(width, tileSize);
+    tileRows = ceilDiv(height, tileSize);
+    int tileCount = tileColumns * tileRows;
+    tileColors = new int[tileCount * maxColorsPerTile];
+    tileCounts = new int[tileCount * maxColorsPerTile];
+    tileSizes = new int[tileCount];
+
+    if (tileCount == 0) {
+      return;
+    }
+    ColorHistogram[] histograms = new ColorHistogram[tileColumns];
+    for (int column = 0; column < tileColumns; column++) {
+      histograms[column] = new ColorHistogram();
+    }
+    ImageRowReader rows = new ImageRowReader(image);
+    int[] row = new int[width];
+    for (int tileRow = 0; tileRow < tileRows; tileRow++) {
+      int bottom = Math.min((tileRow + 1) * tileSize, height);
+      for (int y = tileRow * tileSize; y < bottom; y++) {
+        rows.readRow(y, row, 0);
+        for (int column = 0; column < tileColumns; column++) {
+          int left = column * tileSize;
+          histograms[column].addAll(row, left, Math.min(tileSize, width - left));
+        }
+      }
+      for (int column = 0; column < tileColumns; column++) {
+        storeTile((tileRow * tileColumns) + column, histograms[column]);
+        histograms[column].clear();
+      }
+    }
+  }
+
+  /** Returns the screen capture from which this index was built. */
+  public Image getImage() {
+    return image;
+  }
+
+  /**
+   * Computes the swatch of a region of the screen capture from the index.
+   *
+   * @param left the x coordinate of the left edge of the region
+   * @param top the y coordinate of the top edge of the region
+   * @param width the width of the region, which must be positive
+   * @param height the height of the region, which must be positive
+   * @param multipleForegroundColors if multiple foreground colors should be identified
+   */
+  public ContrastSwatch getContrastSwatch(
+      int left, int top, int width, int height, boolean multipleForegroundColors) {
+    checkArgument(left >= 0, "left must be >= 0");
+    checkArgument(top >= 0, "top must be >= 0");
+    checkArgument(width > 0, "width must be > 0");
+    checkArgument(height > 0, "height must be > 0");
+    checkArgument(left + width <= image.getWidth());
+    checkArgument(top + height <= image.getHeight());
+
+    ColorHistogram histogram = getColorHistogram(left, top, left + width, top + height);
+    histogram.sortByColor();
+    return new ContrastSwatch(histogram, width * height, multipleForegroundColors);
+  }
+
+  private ColorHistogram getColorHistogram(int left, int top, int right, int bottom) {
+    // The range of tiles lying entirely within the region. Tiles along the right and bottom edges
+    // of the screen capture may be narrower than tileSize.
+    int firstColumn = ceilDiv(left, tileSize);
+    int endColumn = (right == image.getWidth()) ? tileColumns : (right / tileSize);
+    int firstRow = ceilDiv(top, tileSize);
+    int endRow = (bottom == image.getHeight()) ? tileRows : (bottom / tileSize);
+
+    ColorHistogram histogram = new ColorHistogram();
+    if ((firstColumn >= endColumn) || (firstRow >= endRow)) {
+      addPixels(histogram, left, top, right, bottom);
+      return histogram;
+    }
+
+    for (int tileRow = firstRow; tileRow < endRow; tileRow++) {
+      for (int column = firstColumn; column < endColumn; column++) {
+        int tile = (tileRow * tileColumns) + column;
+        int start = tile * maxColorsPerTile;
+        int end = start + tileSizes[tile];
+        for (int i = start; i < end; i++) {
+          histogram.add(tileColors[i], tileCounts[i]);
+        }
+      }
+    }
+
+    // The exact pixels of the partially covered tiles around the fully covered ones.
+    int innerLeft = firstColumn * tileSize;
+    int innerTop = firstRow * tileSize;
+    int innerRight = Math.min(endColumn * tileSize, right);
+    int innerBottom = Math.min(endRow * tileSize, bottom);
+    addPixels(histogram, left, top, right, innerTop);
+    addPixels(histogram, left, innerBottom, right, bottom);
+    addPixels(histogram, left, innerTop, innerLeft, innerBottom);
+    addPixels(histogram, innerRight, innerTop, right, innerBottom);
+    return histogram;
+  }
+
+  /** Adds every pixel within the given bounds, if they are not empty. */
+  private void addPixels(ColorHistogram histogram, int left, int top, int right, int bottom) {
+    if ((left >= right) || (top >= bottom)) {
+      return;
+    }
+    ImageRowReader rows = new ImageRowReader(image.crop(left, top, right - left, bottom - top));
+    int[] row = new int[right - left];
+    for (int y = 0; y < bottom - top; y++) {
+      rows.readRow(y, row, 0);
+      histogram.addAll(row, 0, row.length);
+    }
+  }
+
+  /** Stores the most frequent colors of a tile, breaking ties by first occurrence. */
+  private void storeTile(int tile, ColorHistogram histogram) {
+    int size = histogram.size();
+    int start = tile * maxColorsPerTile;
+    if (size <= maxColorsPerTile) {
+      for (int i = 0; i < size; i++) {
+        tileColors[start + i] = histogram.getColorAt(i);
+        tileCounts[start + i] = histogram.getCountAt(i);
+      }
+      tileSizes[tile] = size;
+      return;
+    }
+
+    // Pack each position with its inverted count, so a primitive sort orders by descending count.
+    long[] packed = new long[size];
+    for (int i = 0; i < size; i++) {
+      packed[i] = ((long) (Integer.MAX_VALUE - histogram.getCountAt(i)) << 32) | i;
+    }
+    Arrays.sort(packed);
+    for (int i = 0; i < maxColorsPerTile; i++) {
+      int position = (int) packed[i];
+      tileColors[start + i] = histogram.getColorAt(position);
+      tileCounts[start + i] = histogram.getCountAt(position);
+    }
+    tileSizes[tile] = maxColorsPerTile;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "{TiledColorIndex tileSize=%d maxColorsPerTile=%d tiles=%dx%d}",
+        tileSize, maxColorsPerTile, tileColumns, tileRows);
+  }
+
+  private static int ceilDiv(int dividend, int divisor) {
+    return (dividend + divisor - 1) / divisor;
+  }
+}